@@ -3,6 +3,7 @@ package com.rusel.RCTBluetoothSerial;
 import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Arrays;
 import java.util.Set;
 import javax.annotation.Nullable;
 
@@ -34,7 +35,7 @@ import static com.rusel.RCTBluetoothSerial.RCTBluetoothSerialPackage.TAG;
 public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule implements ActivityEventListener, LifecycleEventListener {
 
     // Debugging
-    private static final boolean D = true;
+    private static final boolean D = false;
 
     // Event names
     private static final String BT_ENABLED = "bluetoothEnabled";
@@ -384,17 +385,14 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule impleme
         String data = "";
         if(test != null) {
             byte[] arr = test.array();
-            Log.i("DATABYTESLENGTH", bytes.length + "");
-            Log.i("DATATESTARR", arr[0] + "");
-            for(byte t: arr){
-                Log.i("Bytes123", t + "");
+            boolean verbose = Log.isLoggable(TAG, Log.VERBOSE);
+            if (verbose) {
+                Log.v(TAG, "Read " + bytes.length + " bytes, frame " + Arrays.toString(arr));
             }
             if(arr[0] != 0 && arr[22] != 0) {
                 short signature = ByteBuffer.wrap(new byte[]{arr[0], arr[1]}).getShort();
-                Log.i("TESTDATA1123", signature + "");
                 int commandCode = ByteBuffer.wrap(new byte[]{arr[2]}).getShort();
                 commandCode = ((short) commandCode) & 0xff;
-                Log.i("TESTDATA1123", commandCode + "");
                 int status = ByteBuffer.wrap(new byte[]{arr[3]}).getShort();
                 status = ((short) status) & 0xff;
                 int battery = ByteBuffer.wrap(new byte[]{arr[4]}).getShort();
@@ -407,9 +405,9 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule impleme
                 short pm25 = ByteBuffer.wrap(new byte[]{arr[17], arr[18]}).getShort();
                 short pm10 = ByteBuffer.wrap(new byte[]{arr[19], arr[20]}).getShort();
                 short tvoc = ByteBuffer.wrap(new byte[]{arr[21], arr[22]}).getShort();
-                Log.i("TESTDATA1123", arr[1] + " " + arr[2]);
-                Log.i("TESTDATAHELP", "Темперура = " + temperature + "Влажность = " + humidity + "co2 = " + co2 + "battery = " + battery + " " + lastLoggedRecord + " " +temperature + " " + humidity + " " + co2
-                        + " " + pm1 + " " + pm25 + " " + pm10 + " " + tvoc);
+                if (verbose) {
+                    Log.v(TAG, "Frame " + signature + " " + commandCode + ", temperature = " + temperature + ", humidity = " + humidity + ", co2 = " + co2 + ", battery = " + battery);
+                }
                 data = temperature + " " +  humidity + " " + co2 + " " + battery + " " + lastLoggedRecord + " " +temperature + " " + humidity + " " + co2
                         + " " + pm1 + " " + pm25 + " " + pm10 + " " + tvoc;
             }else {
@@ -417,26 +415,6 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule impleme
             }
         }
 
-        if(length > 15) {
-            Log.i("DATABLE0", bytes[0] + "" );
-            Log.i("DATABLE1", bytes[1] + "" );
-            Log.i("DATABLE2", bytes[2] + "" );
-            Log.i("DATABLE3", bytes[3] + "" );
-            Log.i("DATABLE4", bytes[4] + "" );
-            Log.i("DATABLE5", bytes[5] + "" );
-            Log.i("DATABLE6", bytes[6] + "" );
-            Log.i("DATABLE7", bytes[7] + "" );
-            Log.i("DATABLE8", bytes[8] + "" );
-            Log.i("DATABLE9", bytes[9] + "" );
-            Log.i("DATABLE10", bytes[10] + "" );
-            Log.i("DATABLE11", bytes[11] + "" );
-            Log.i("DATABLE12", bytes[12] + "" );
-            Log.i("DATABLE13", bytes[13] + "" );
-            Log.i("DATABLE14", bytes[14] + "" );
-            Log.i("DATABLE15", bytes[15] + "" );
-
-
-        }
         //String data = mBuffer.substring(0, length);
         mBuffer.delete(0, length);
         promise.resolve(data);
@@ -542,15 +520,13 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule impleme
         //ByteBuffer buffer = ByteBuffer.wrap(readBuffer);
         byte[] arr = data.array();
        // for (int x:array) array[i++] = buffer.getInt(x);
-        Log.i("TESTDATA1123", arr[1] + "");
-        if(arr[0] != 0) {
+        // Fields are only decoded to be logged
+        if(arr[0] != 0 && Log.isLoggable(TAG, Log.VERBOSE)) {
             ByteOrder order = ByteOrder.LITTLE_ENDIAN;
             short signature = ByteBuffer.wrap(new byte[]{arr[0], arr[1]}).order(order).getShort();
-            Log.i("TESTDATA1123", signature + "");
 //            int commandCode = ByteBuffer.allocate(2).order(order).wrap(new byte[]{arr[2]}).getShort();
             short commandCode = arr[2];
            // commandCode =  commandCode & 0xff;
-            Log.i("TESTDATA1123", commandCode + "");
 //            int status = ByteBuffer.wrap(new byte[]{arr[3]}).order(order).getShort();
 //            status = ((short) status) & 0xff;
                 short status = arr[3];
@@ -565,8 +541,7 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule impleme
             short pm25 = ByteBuffer.wrap(new byte[]{arr[17], arr[18]}).order(order).getShort();
             short pm10 = ByteBuffer.wrap(new byte[]{arr[19], arr[20]}).order(order).getShort();
             short tvoc = ByteBuffer.wrap(new byte[]{arr[21], arr[22]}).order(order).getShort();
-            Log.i("TESTDATA1123", arr[1] + " " + arr[2]);
-            Log.i("TESTDATA", signature + " " + commandCode + " " + status + " " + battery + " " + lastLoggedRecord + " " +temperature + " " + humidity + " " + co2
+            Log.v(TAG, signature + " " + commandCode + " " + status + " " + battery + " " + lastLoggedRecord + " " +temperature + " " + humidity + " " + co2
                     + " " + pm1 + " " + pm25 + " " + pm10 + " " + tvoc);
         }
 
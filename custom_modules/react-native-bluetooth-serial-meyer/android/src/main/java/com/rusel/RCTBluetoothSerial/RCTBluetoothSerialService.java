@@ -24,7 +24,7 @@ import static com.rusel.RCTBluetoothSerial.RCTBluetoothSerialPackage.TAG;
  */
 class RCTBluetoothSerialService {
     // Debugging
-    private static final boolean D = true;
+    private static final boolean D = false;
 
     // UUIDs
     private static final UUID UUID_SPP = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
@@ -305,16 +305,9 @@ class RCTBluetoothSerialService {
             while (true) {
                 try {
                     bytes = mmInStream.read(buffer); // Read from the InputStream
-                    Log.i("DATAFROMBYTES", bytes + " ");
+                    if (D) Log.d(TAG, "Read " + bytes + " bytes");
                     ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
                     byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-                    byte[] arr = byteBuffer.array();
-                    byte firstSignatureByte = (byte) 222;
-                    byte secondSignatureByte = (byte) 175;
-                    byte [] arrToEquals = {firstSignatureByte, secondSignatureByte};
-                    Log.i("DATAFROMBYTES", "HELP PLEASE");
-
-                    String data = new String(buffer, 0, bytes, "ISO-8859-1");
 
                     mModule.onData(byteBuffer); // Send the new data String to the UI Activity
                 } catch (Exception e) {
@@ -333,8 +326,7 @@ class RCTBluetoothSerialService {
          */
         void write(byte[] buffer) {
             try {
-                String str = new String(buffer, "UTF-8");
-                if (D) Log.d(TAG, "Write in thread " + str);
+                if (D) Log.d(TAG, "Write in thread " + new String(buffer, "UTF-8"));
                 mmOutStream.write(buffer);
             } catch (Exception e) {
                 Log.e(TAG, "Exception during write", e);
@@ -0,0 +1,109 @@
+package com.rusel.RCTBluetoothSerial;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Frame path of onData and readFromDevice: splitting the stream into
+ * frames and reading the fields of a frame
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DecodeBenchmark {
+    private static final int FRAMES = 64;
+
+    private byte[] mStream;
+    private SensorFrameDecoder mDecoder;
+    private final SensorFrame mFrame = new SensorFrame();
+    private Blackhole mBlackhole;
+    private int mNext;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        mStream = Frames.stream(FRAMES, 1);
+        mBlackhole = blackhole;
+        mDecoder = new SensorFrameDecoder(new SensorFrameDecoder.Listener() {
+            @Override
+            public boolean onFrame(byte[] frame) {
+                mBlackhole.consume(frame);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Stream of frames fed in 1024 byte reads, like the reader thread does
+     */
+    @Benchmark
+    public void decodeStream() {
+        for (int offset = 0; offset < mStream.length; offset += 1024) {
+            mDecoder.feed(mStream, offset, Math.min(1024, mStream.length - offset));
+        }
+    }
+
+    /**
+     * Stream of frames arriving a few bytes at a time
+     */
+    @Benchmark
+    public void decodeFragmented() {
+        for (int offset = 0; offset < mStream.length; offset += 7) {
+            mDecoder.feed(mStream, offset, Math.min(7, mStream.length - offset));
+        }
+    }
+
+    /**
+     * Reading all fields of a frame through the flyweight
+     */
+    @Benchmark
+    public long readFields() {
+        int offset = nextFrameOffset();
+        SensorFrame frame = mFrame.wrap(mStream, offset);
+        long sum = frame.getSignature() + frame.getLastLoggedRecord() + frame.getBattery();
+        for (int channel = 0; channel <= SensorFrame.CHANNEL_TVOC; channel++) {
+            sum += frame.getChannel(channel);
+        }
+        return sum;
+    }
+
+    /**
+     * Reading all fields the way readFromDevice did before SensorFrame,
+     * wrapping a new array in a new ByteBuffer for every field
+     */
+    @Benchmark
+    public long readFieldsBaseline() {
+        byte[] arr = mStream;
+        int o = nextFrameOffset();
+        ByteOrder order = ByteOrder.LITTLE_ENDIAN;
+        short signature = ByteBuffer.wrap(new byte[]{arr[o], arr[o + 1]}).order(order).getShort();
+        short battery = arr[o + 4];
+        battery &= 0xff;
+        int lastLoggedRecord = ByteBuffer.wrap(new byte[]{arr[o + 5], arr[o + 6], arr[o + 7], arr[o + 8]}).order(order).getInt();
+        short temperature = ByteBuffer.wrap(new byte[]{arr[o + 9], arr[o + 10]}).order(order).getShort();
+        short humidity = ByteBuffer.wrap(new byte[]{arr[o + 11], arr[o + 12]}).order(order).getShort();
+        short co2 = ByteBuffer.wrap(new byte[]{arr[o + 13], arr[o + 14]}).order(order).getShort();
+        short pm1 = ByteBuffer.wrap(new byte[]{arr[o + 15], arr[o + 16]}).order(order).getShort();
+        short pm25 = ByteBuffer.wrap(new byte[]{arr[o + 17], arr[o + 18]}).order(order).getShort();
+        short pm10 = ByteBuffer.wrap(new byte[]{arr[o + 19], arr[o + 20]}).order(order).getShort();
+        short tvoc = ByteBuffer.wrap(new byte[]{arr[o + 21], arr[o + 22]}).order(order).getShort();
+        return signature + battery + lastLoggedRecord + temperature + humidity + co2 + pm1 + pm25 + pm10 + tvoc;
+    }
+
+    private int nextFrameOffset() {
+        mNext = (mNext + 1) % FRAMES;
+        return mNext * SensorFrameDecoder.FRAME_LENGTH;
+    }
+}
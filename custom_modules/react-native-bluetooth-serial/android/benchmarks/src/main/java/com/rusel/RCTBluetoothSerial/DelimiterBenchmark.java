@@ -0,0 +1,83 @@
+package com.rusel.RCTBluetoothSerial;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Delimiter path of onBytes and readUntilDelimiter over the session buffer
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DelimiterBenchmark {
+    @Param({"16", "256"})
+    public int mLineLength;
+
+    private final DelimiterBuffer mBuffer = new DelimiterBuffer();
+    private final byte[] mDelimiter = DelimiterBuffer.toBytes("\r\n");
+    private byte[] mChunk;
+
+    @Setup
+    public void setUp() {
+        // 1024 byte read holding complete lines
+        StringBuilder data = new StringBuilder();
+        while (data.length() + mLineLength + 2 <= 1024) {
+            for (int i = 0; i < mLineLength; i++) {
+                data.append((char) ('a' + i % 26));
+            }
+            data.append("\r\n");
+        }
+        mChunk = DelimiterBuffer.toBytes(data.toString());
+    }
+
+    /**
+     * Append a read and take all complete messages, like onBytes
+     */
+    @Benchmark
+    public void appendAndSplit(Blackhole blackhole) {
+        mBuffer.append(mChunk, 0, mChunk.length);
+        String message;
+        while ((message = mBuffer.next(mDelimiter)) != null) {
+            blackhole.consume(message);
+        }
+    }
+
+    /**
+     * Append a read and take messages with readUntil, like readUntilDelimiter
+     */
+    @Benchmark
+    public void appendAndReadUntil(Blackhole blackhole) {
+        mBuffer.append(mChunk, 0, mChunk.length);
+        while (mBuffer.length() > 0) {
+            String message = mBuffer.readUntil(mDelimiter);
+            if (message.isEmpty()) break;
+            blackhole.consume(message);
+        }
+    }
+
+    /**
+     * Append a read in small pieces, searching for the delimiter after each
+     */
+    @Benchmark
+    public void fragmentedAppend(Blackhole blackhole) {
+        for (int offset = 0; offset < mChunk.length; offset += 20) {
+            mBuffer.append(mChunk, offset, Math.min(20, mChunk.length - offset));
+            String message;
+            while ((message = mBuffer.next(mDelimiter)) != null) {
+                blackhole.consume(message);
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.rusel.RCTBluetoothSerial;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building what onData sends to JS: the legacy space joined string and
+ * the structured map, through the module's EventFormat with a map stand-in
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EventBenchmark {
+    private static final int FRAMES = 64;
+    private static final String ADDRESS = "00:11:22:33:44:55";
+
+    private byte[] mStream;
+    private final SensorFrame mFrame = new SensorFrame();
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        mStream = Frames.stream(FRAMES, 2);
+    }
+
+    /**
+     * String of the legacy read event
+     */
+    @Benchmark
+    public String formatLegacy() {
+        return EventFormat.toText(nextFrame());
+    }
+
+    /**
+     * Map of the structured read event, as built by frameToWritableMap
+     */
+    @Benchmark
+    public StandInMap frameToMap() {
+        StandInMap params = new StandInMap();
+        EventFormat.putFrame(nextFrame(), ADDRESS, 1500000000000L, 1, params);
+        return params;
+    }
+
+    /**
+     * Map of a device, as built by deviceToWritableMap
+     */
+    @Benchmark
+    public StandInMap deviceToMap() {
+        StandInMap params = new StandInMap();
+        EventFormat.putDevice("Sensor", ADDRESS, 7936, params);
+        return params;
+    }
+
+    private SensorFrame nextFrame() {
+        mNext = (mNext + 1) % FRAMES;
+        return mFrame.wrap(mStream, mNext * SensorFrameDecoder.FRAME_LENGTH);
+    }
+}
@@ -0,0 +1,40 @@
+package com.rusel.RCTBluetoothSerial;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+/**
+ * Sensor frames with plausible values for benchmarks
+ */
+final class Frames {
+    private Frames() {
+    }
+
+    /**
+     * Create frames back to back in one array
+     * @param count Number of frames
+     * @param seed Random seed
+     * @return Stream bytes
+     */
+    static byte[] stream(int count, long seed) {
+        Random random = new Random(seed);
+        ByteBuffer buffer = ByteBuffer.allocate(count * SensorFrameDecoder.FRAME_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < count; i++) {
+            buffer.put(SensorFrameDecoder.SIGNATURE_FIRST);
+            buffer.put(SensorFrameDecoder.SIGNATURE_SECOND);
+            buffer.put((byte) 1);                           // command code
+            buffer.put((byte) 0);                           // status
+            buffer.put((byte) (50 + random.nextInt(50)));   // battery
+            buffer.putInt(1000 + i);                        // last logged record
+            buffer.putShort((short) (200 + random.nextInt(50)));  // temperature
+            buffer.putShort((short) (400 + random.nextInt(100))); // humidity
+            buffer.putShort((short) (400 + random.nextInt(800))); // co2
+            buffer.putShort((short) random.nextInt(30));          // pm1
+            buffer.putShort((short) random.nextInt(50));          // pm25
+            buffer.putShort((short) random.nextInt(80));          // pm10
+            buffer.putShort((short) (1 + random.nextInt(500)));   // tvoc
+        }
+        return buffer.array();
+    }
+}
@@ -0,0 +1,34 @@
+package com.rusel.RCTBluetoothSerial;
+
+import java.util.HashMap;
+
+/**
+ * JVM stand-in for the bridge WritableMap, which like JavaOnlyMap of
+ * React Native keeps boxed values in a hash map
+ */
+final class StandInMap implements EventFormat.Fields {
+    private final HashMap<String, Object> mValues = new HashMap<>();
+
+    @Override
+    public void putInt(String key, int value) {
+        mValues.put(key, value);
+    }
+
+    @Override
+    public void putDouble(String key, double value) {
+        mValues.put(key, value);
+    }
+
+    @Override
+    public void putString(String key, String value) {
+        mValues.put(key, value);
+    }
+
+    void putMap(String key, StandInMap value) {
+        mValues.put(key, value);
+    }
+
+    int size() {
+        return mValues.size();
+    }
+}
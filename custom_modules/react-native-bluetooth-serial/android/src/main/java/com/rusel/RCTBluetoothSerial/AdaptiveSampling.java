@@ -0,0 +1,94 @@
+package com.rusel.RCTBluetoothSerial;
+
+/**
+ * Policy adapting the polling interval to how fast readings change.
+ *
+ * The rate of change of the selected channels is taken between
+ * consecutive readings of a device. If any of them changes faster than
+ * its threshold the interval is halved, down to the minimum. Once all of
+ * them change at less than half their threshold the interval grows by a
+ * quarter, up to the maximum. In between the interval is kept, so the
+ * rate does not flap around a threshold.
+ *
+ * The policy is immutable and shared by all devices, the readings it
+ * compares against are kept per device in a {@link State}.
+ */
+final class AdaptiveSampling {
+
+    /**
+     * Previous reading of a device, updated by its reader thread and reset
+     * from any thread
+     */
+    static final class State {
+        private final short[] mValues = new short[SensorFrame.CHANNEL_COUNT];
+        private long mTimestamp;
+        private volatile boolean mHasReading;
+
+        /**
+         * Forget previous reading, for example when polling starts over
+         */
+        void reset() {
+            mHasReading = false;
+        }
+    }
+
+    private final int[] mChannels;
+    private final double[] mThresholds;
+    private final long mMinInterval;
+    private final long mMaxInterval;
+
+    /**
+     * Constructor
+     * @param channels Channels to watch, SensorFrame.CHANNEL_ constants
+     * @param thresholds Change per second of each channel above which sampling speeds up
+     * @param minInterval Shortest interval in ms
+     * @param maxInterval Longest interval in ms
+     */
+    AdaptiveSampling(int[] channels, double[] thresholds, long minInterval, long maxInterval) {
+        mChannels = channels.clone();
+        mThresholds = thresholds.clone();
+        mMinInterval = Math.max(1, minInterval);
+        mMaxInterval = Math.max(mMinInterval, maxInterval);
+    }
+
+    /**
+     * @param interval Interval in ms
+     * @return Interval within the bounds
+     */
+    long clamp(long interval) {
+        return Math.min(mMaxInterval, Math.max(mMinInterval, interval));
+    }
+
+    /**
+     * Take reading into account and get the interval to poll at
+     * @param state Previous reading of device, updated with this one
+     * @param frame Frame with data
+     * @param timestamp Time the frame was received
+     * @param interval Current interval in ms
+     * @return Next interval in ms
+     */
+    long next(State state, SensorFrame frame, long timestamp, long interval) {
+        long elapsed = timestamp - state.mTimestamp;
+        boolean compare = state.mHasReading && elapsed > 0;
+
+        boolean fast = false;
+        boolean stable = true;
+        for (int i = 0; i < mChannels.length; i++) {
+            int channel = mChannels[i];
+            short value = frame.getChannel(channel);
+            if (compare) {
+                double rate = Math.abs(value - state.mValues[channel]) * 1000.0 / elapsed;
+                if (rate > mThresholds[i]) fast = true;
+                if (rate >= mThresholds[i] / 2) stable = false;
+            }
+            state.mValues[channel] = value;
+        }
+        state.mTimestamp = timestamp;
+        state.mHasReading = true;
+
+        if (!compare) return clamp(interval);
+        if (fast) return clamp(interval / 2);
+        if (stable) return clamp(interval + Math.max(1, interval / 4));
+        return clamp(interval);
+    }
+}
@@ -0,0 +1,206 @@
+package com.rusel.RCTBluetoothSerial;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outstanding commands sent to a sensor, matched with their responses.
+ *
+ * Several commands can be in flight at once. Live and polled frames carry
+ * the same command codes as responses, so a frame only answers a command
+ * when all of these hold:
+ * <ul>
+ * <li>it carries the command code of the command</li>
+ * <li>it arrived within the window of the command, after the command was
+ * last sent and before its timeout</li>
+ * <li>if the command expects a status, it carries that status byte</li>
+ * <li>if the command expects its argument echoed, it carries the argument
+ * in its lastLoggedRecord field</li>
+ * </ul>
+ * Of the commands a frame matches, the oldest one is answered, the sensor
+ * answers in order. Without status or echo a frame sent by the sensor on
+ * its own within the window still answers a command, commands of devices
+ * which stream readings should ask for one of them. Commands without
+ * response are sent again after their timeout and failed once their
+ * retries are used up.
+ *
+ * Responses arrive on the reader thread and timeouts are checked from a
+ * timer, so state changes are synchronized. Callbacks are made after the
+ * monitor is released.
+ */
+class CommandRequests {
+    static final int MAX_OUTSTANDING = 16;
+    static final int ANY_STATUS = -1;
+
+    /**
+     * Sends commands, called with the monitor held
+     */
+    interface Sender {
+        /**
+         * Send command
+         * @param command Command code
+         * @param argument Command argument
+         * @param timeout Time in ms after which timeouts have to be checked
+         */
+        void send(int command, int argument, long timeout);
+    }
+
+    /**
+     * Receives the outcome of a command
+     */
+    interface Callback {
+        /**
+         * Handle response
+         * @param frame Response frame, only valid during the call
+         * @param timestamp Time the response was received
+         */
+        void onResponse(SensorFrame frame, long timestamp);
+
+        /**
+         * Handle command without response
+         * @param e Reason
+         */
+        void onFailed(Exception e);
+    }
+
+    private static final class Request {
+        final int command;
+        final int argument;
+        final int status;
+        final boolean echo;
+        final long timeout;
+        final int retries;
+        final Callback callback;
+        long sentAt;
+        int attempts;
+
+        Request(int command, int argument, int status, boolean echo, long timeout, int retries, Callback callback) {
+            this.command = command;
+            this.argument = argument;
+            this.status = status;
+            this.echo = echo;
+            this.timeout = timeout;
+            this.retries = retries;
+            this.callback = callback;
+        }
+
+        /**
+         * @param frame Frame received
+         * @param now Current time in ms
+         * @return Whether frame is the response to this request
+         */
+        boolean matches(SensorFrame frame, long now) {
+            return frame.getCommandCode() == (command & 0xff)
+                    && now >= sentAt && now - sentAt <= timeout
+                    && (status == ANY_STATUS || frame.getStatus() == (status & 0xff))
+                    && (!echo || frame.getLastLoggedRecord() == argument);
+        }
+    }
+
+    private final Sender mSender;
+    // Outstanding requests in the order they were submitted
+    private final List<Request> mRequests = new ArrayList<>();
+
+    /**
+     * Constructor
+     * @param sender Sender
+     */
+    CommandRequests(Sender sender) {
+        mSender = sender;
+    }
+
+    /**
+     * Send command and wait for its response
+     * @param command Command code, the response carries it as well
+     * @param argument Command argument
+     * @param status Status byte the response carries, ANY_STATUS to not check it
+     * @param echo Whether the response carries the argument in its lastLoggedRecord field
+     * @param timeout Time in ms to wait for the response before sending again
+     * @param retries Number of times the command is sent again
+     * @param callback Callback
+     * @param now Current time in ms
+     * @return False if too many commands are outstanding, callback is not called then
+     */
+    synchronized boolean submit(int command, int argument, int status, boolean echo, long timeout, int retries, Callback callback, long now) {
+        if (mRequests.size() >= MAX_OUTSTANDING) return false;
+        Request request = new Request(command, argument, status, echo, Math.max(1, timeout), Math.max(0, retries), callback);
+        mRequests.add(request);
+        send(request, now);
+        return true;
+    }
+
+    /**
+     * Offer frame received from the sensor
+     * @param frame Decoded frame
+     * @param timestamp Time the frame was received
+     * @param now Current time in ms, on the clock passed to submit
+     * @return Whether the frame answered a command
+     */
+    boolean onFrame(SensorFrame frame, long timestamp, long now) {
+        Request answered = null;
+        synchronized (this) {
+            for (int i = 0; i < mRequests.size(); i++) {
+                if (mRequests.get(i).matches(frame, now)) {
+                    answered = mRequests.remove(i);
+                    break;
+                }
+            }
+        }
+        if (answered == null) return false;
+        answered.callback.onResponse(frame, timestamp);
+        return true;
+    }
+
+    /**
+     * Send commands which timed out again or fail them
+     * @param now Current time in ms
+     */
+    void checkTimeouts(long now) {
+        List<Request> failed = null;
+        synchronized (this) {
+            for (int i = 0; i < mRequests.size(); i++) {
+                Request request = mRequests.get(i);
+                if (now - request.sentAt < request.timeout) continue;
+                if (request.attempts <= request.retries) {
+                    send(request, now);
+                } else {
+                    if (failed == null) failed = new ArrayList<>();
+                    failed.add(mRequests.remove(i--));
+                }
+            }
+        }
+        if (failed == null) return;
+        for (Request request : failed) {
+            request.callback.onFailed(new Exception("No response to command " + request.command
+                    + " after " + request.attempts + " attempts"));
+        }
+    }
+
+    /**
+     * Fail all outstanding commands
+     * @param e Reason
+     */
+    void cancel(Exception e) {
+        List<Request> cancelled;
+        synchronized (this) {
+            cancelled = new ArrayList<>(mRequests);
+            mRequests.clear();
+        }
+        for (Request request : cancelled) {
+            request.callback.onFailed(e);
+        }
+    }
+
+    /**
+     * @return Number of outstanding commands
+     */
+    synchronized int size() {
+        return mRequests.size();
+    }
+
+    private void send(Request request, long now) {
+        request.sentAt = now;
+        request.attempts++;
+        mSender.send(request.command, request.argument, request.timeout);
+    }
+}
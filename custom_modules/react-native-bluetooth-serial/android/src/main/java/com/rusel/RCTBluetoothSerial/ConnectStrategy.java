@@ -0,0 +1,68 @@
+package com.rusel.RCTBluetoothSerial;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import javax.annotation.Nullable;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothSocket;
+
+/**
+ * Ways of creating the RFCOMM socket to a device, in the order they are
+ * tried by default.
+ */
+enum ConnectStrategy {
+    /** Authenticated socket found by SDP lookup of the serial port service */
+    SECURE {
+        @Override
+        BluetoothSocket createSocket(BluetoothDevice device) throws Exception {
+            return device.createRfcommSocketToServiceRecord(UUID_SPP);
+        }
+    },
+
+    /**
+     * Socket on channel 1 without SDP lookup, needed by some 4.1 devices
+     * See https://github.com/don/RCTBluetoothSerialModule/issues/89
+     */
+    CHANNEL_1 {
+        @Override
+        BluetoothSocket createSocket(BluetoothDevice device) throws Exception {
+            return (BluetoothSocket) device.getClass().getMethod("createRfcommSocket", new Class[] {int.class}).invoke(device, 1);
+        }
+    },
+
+    /**
+     * Unauthenticated socket found by SDP lookup of the serial port service,
+     * tried last as the baseline never needed it
+     */
+    INSECURE {
+        @Override
+        BluetoothSocket createSocket(BluetoothDevice device) throws Exception {
+            return device.createInsecureRfcommSocketToServiceRecord(UUID_SPP);
+        }
+    };
+
+    private static final UUID UUID_SPP = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
+
+    /**
+     * Create unconnected socket to device
+     * @param device Device
+     * @return Socket
+     */
+    abstract BluetoothSocket createSocket(BluetoothDevice device) throws Exception;
+
+    /**
+     * Get strategies in the order to try them
+     * @param preferred Strategy which worked last time, tried first
+     * @return Strategies
+     */
+    static List<ConnectStrategy> inOrder(@Nullable ConnectStrategy preferred) {
+        List<ConnectStrategy> strategies = new ArrayList<>();
+        if (preferred != null) strategies.add(preferred);
+        for (ConnectStrategy strategy : values()) {
+            if (strategy != preferred) strategies.add(strategy);
+        }
+        return strategies;
+    }
+}
@@ -0,0 +1,30 @@
+package com.rusel.RCTBluetoothSerial;
+
+/**
+ * State of the connection to a device and the transitions allowed between
+ * them. Only a connected device has a connection to read and write.
+ */
+enum ConnectionState {
+    /** Doing nothing */
+    NONE,
+    /** Initiating an outgoing connection */
+    CONNECTING,
+    /** Connected to the device */
+    CONNECTED,
+    /** Waiting to connect again after connection loss */
+    RECONNECTING;
+
+    /**
+     * Check whether state can be left for next. Connections can be stopped
+     * or started over in every state, a connection can only be restored
+     * once it was made.
+     * @param next Next state
+     * @return Whether the transition is allowed
+     */
+    boolean canMoveTo(ConnectionState next) {
+        if (next == RECONNECTING) {
+            return this == CONNECTED || this == RECONNECTING;
+        }
+        return true;
+    }
+}
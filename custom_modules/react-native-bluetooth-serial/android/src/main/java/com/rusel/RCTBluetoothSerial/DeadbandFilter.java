@@ -0,0 +1,73 @@
+package com.rusel.RCTBluetoothSerial;
+
+/**
+ * Decides which readings are worth a read event.
+ *
+ * A reading passes when one of the filtered channels moved further than
+ * its band away from the value last passed, or when nothing passed for
+ * longer than the maximum silence. Channels without band do not make a
+ * reading pass on their own. Values are compared in the raw units of the
+ * frame.
+ *
+ * The filter is immutable and shared by all devices, the values last
+ * passed are kept per device in a {@link State}.
+ */
+final class DeadbandFilter {
+    static final int NO_BAND = -1;
+
+    /**
+     * Values last passed for a device, updated by its reader thread and
+     * reset from any thread
+     */
+    static final class State {
+        private final short[] mValues = new short[SensorFrame.CHANNEL_COUNT];
+        private long mTimestamp;
+        private volatile boolean mHasReading;
+
+        /**
+         * Forget values last passed, the next reading passes
+         */
+        void reset() {
+            mHasReading = false;
+        }
+    }
+
+    private final int[] mBands;
+    private final long mMaxSilence;
+
+    /**
+     * Constructor
+     * @param bands Band of each channel by SensorFrame.CHANNEL_ constant, NO_BAND to not filter it
+     * @param maxSilence Time in ms after which a reading passes anyway, 0 for never
+     */
+    DeadbandFilter(int[] bands, long maxSilence) {
+        mBands = bands.clone();
+        mMaxSilence = maxSilence;
+    }
+
+    /**
+     * Check whether reading passes, remembering it if it does
+     * @param state Values last passed for device
+     * @param frame Frame with data
+     * @param timestamp Time the frame was received
+     * @return Whether the reading passes
+     */
+    boolean accept(State state, SensorFrame frame, long timestamp) {
+        boolean pass = !state.mHasReading
+                || (mMaxSilence > 0 && timestamp - state.mTimestamp >= mMaxSilence);
+        for (int channel = 0; channel < mBands.length && !pass; channel++) {
+            int band = mBands[channel];
+            if (band != NO_BAND && Math.abs(frame.getChannel(channel) - state.mValues[channel]) > band) {
+                pass = true;
+            }
+        }
+        if (!pass) return false;
+
+        for (int channel = 0; channel < SensorFrame.CHANNEL_COUNT; channel++) {
+            state.mValues[channel] = frame.getChannel(channel);
+        }
+        state.mTimestamp = timestamp;
+        state.mHasReading = true;
+        return true;
+    }
+}
@@ -0,0 +1,198 @@
+package com.rusel.RCTBluetoothSerial;
+
+import java.nio.charset.Charset;
+
+/**
+ * Growable byte ring buffer which splits the incoming stream into
+ * messages ending with a delimiter.
+ *
+ * The delimiter search is incremental, positions which were already ruled
+ * out are not scanned again when more data arrives, so long lines cost
+ * linear time. A String is built only for complete messages. Once the
+ * buffer holds {@link #MAX_CAPACITY} bytes the oldest ones are dropped.
+ *
+ * This class is not thread safe, the reader thread owns it and any other
+ * thread has to synchronize on it.
+ */
+final class DelimiterBuffer {
+    static final int MAX_CAPACITY = 64 * 1024;
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final Charset CHARSET = Charset.forName("ISO-8859-1");
+
+    private byte[] mData = new byte[INITIAL_CAPACITY];
+    private int mHead;
+    private int mSize;
+
+    // Number of leading positions known not to start the delimiter
+    private int mScanned;
+    private byte[] mScannedDelimiter;
+
+    private byte[] mScratch = new byte[INITIAL_CAPACITY];
+
+    /**
+     * Convert delimiter string to the bytes it is matched with
+     * @param delimiter Delimiter
+     * @return Delimiter bytes
+     */
+    static byte[] toBytes(String delimiter) {
+        return delimiter.getBytes(CHARSET);
+    }
+
+    /**
+     * Append bytes read from the stream
+     * @param src Buffer holding the bytes
+     * @param offset Offset in buffer
+     * @param length Number of bytes
+     */
+    void append(byte[] src, int offset, int length) {
+        if (length > MAX_CAPACITY) {
+            offset += length - MAX_CAPACITY;
+            length = MAX_CAPACITY;
+        }
+        if (mSize + length > mData.length) {
+            grow(mSize + length);
+        }
+        if (mSize + length > mData.length) {
+            // At maximum capacity, make room by dropping the oldest bytes
+            skip(mSize + length - mData.length);
+        }
+
+        int tail = (mHead + mSize) & (mData.length - 1);
+        int first = Math.min(length, mData.length - tail);
+        System.arraycopy(src, offset, mData, tail, first);
+        System.arraycopy(src, offset + first, mData, 0, length - first);
+        mSize += length;
+    }
+
+    /**
+     * Take the next complete message, resuming the search where the last
+     * call with the same delimiter stopped
+     * @param delimiter Delimiter bytes, not empty
+     * @return Message including delimiter or null if there is no complete message
+     */
+    String next(byte[] delimiter) {
+        if (delimiter != mScannedDelimiter) {
+            mScannedDelimiter = delimiter;
+            mScanned = 0;
+        }
+
+        int index = indexOf(delimiter, mScanned);
+        if (index < 0) {
+            mScanned = Math.max(0, mSize - delimiter.length + 1);
+            return null;
+        }
+
+        mScanned = 0;
+        return take(index + delimiter.length);
+    }
+
+    /**
+     * Take data up to and including the first occurrence of delimiter
+     * @param delimiter Delimiter bytes
+     * @return Message including delimiter or empty string if delimiter was not found
+     */
+    String readUntil(byte[] delimiter) {
+        if (delimiter.length == 0) return "";
+        int index = indexOf(delimiter, 0);
+        if (index < 0) return "";
+        mScanned = 0;
+        return take(index + delimiter.length);
+    }
+
+    /**
+     * @return Number of buffered bytes
+     */
+    int length() {
+        return mSize;
+    }
+
+    /**
+     * Drop all buffered bytes
+     */
+    void clear() {
+        mHead = 0;
+        mSize = 0;
+        mScanned = 0;
+    }
+
+    /**
+     * Map position relative to the oldest byte to array index
+     * @param position Position
+     */
+    private int index(int position) {
+        return (mHead + position) & (mData.length - 1);
+    }
+
+    /**
+     * Find delimiter in buffered bytes
+     * @param delimiter Delimiter bytes
+     * @param from First position to check
+     * @return Position relative to the oldest byte or -1
+     */
+    private int indexOf(byte[] delimiter, int from) {
+        int last = mSize - delimiter.length;
+        byte first = delimiter[0];
+        for (int p = from; p <= last; p++) {
+            if (mData[index(p)] != first) continue;
+            int i = 1;
+            while (i < delimiter.length && mData[index(p + i)] == delimiter[i]) {
+                i++;
+            }
+            if (i == delimiter.length) return p;
+        }
+        return -1;
+    }
+
+    /**
+     * Remove the oldest bytes and return them as String
+     * @param length Number of bytes
+     */
+    private String take(int length) {
+        String message;
+        int head = mHead;
+        if (head + length <= mData.length) {
+            message = new String(mData, head, length, CHARSET);
+        } else {
+            if (mScratch.length < length) {
+                mScratch = new byte[Math.max(length, mScratch.length * 2)];
+            }
+            int first = mData.length - head;
+            System.arraycopy(mData, head, mScratch, 0, first);
+            System.arraycopy(mData, 0, mScratch, first, length - first);
+            message = new String(mScratch, 0, length, CHARSET);
+        }
+        skip(length);
+        return message;
+    }
+
+    /**
+     * Drop the oldest bytes
+     * @param length Number of bytes
+     */
+    private void skip(int length) {
+        mHead = index(length);
+        mSize -= length;
+        mScanned = Math.max(0, mScanned - length);
+        if (mSize == 0) mHead = 0;
+    }
+
+    /**
+     * Grow storage to the next power of two holding required bytes, up to maximum capacity
+     * @param required Required number of bytes
+     */
+    private void grow(int required) {
+        int capacity = mData.length;
+        while (capacity < required && capacity < MAX_CAPACITY) {
+            capacity *= 2;
+        }
+        if (capacity == mData.length) return;
+
+        byte[] data = new byte[capacity];
+        int first = Math.min(mSize, mData.length - mHead);
+        System.arraycopy(mData, mHead, data, 0, first);
+        System.arraycopy(mData, 0, data, first, mSize - first);
+        mData = data;
+        mHead = 0;
+    }
+}
@@ -0,0 +1,193 @@
+package com.rusel.RCTBluetoothSerial;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+import android.util.Log;
+
+import com.facebook.react.bridge.Promise;
+
+import static com.rusel.RCTBluetoothSerial.RCTBluetoothSerialPackage.TAG;
+
+/**
+ * State the module keeps for every device it has been connected to.
+ *
+ * Each connected device has its own reader thread, so everything touched
+ * while handling incoming data lives here instead of in the module. That
+ * way readers of different devices never share buffers or wait for each
+ * other.
+ */
+class DeviceSession {
+    private static final int HISTORY_CAPACITY = 1024;
+    private static final int STORE_MAX_SEGMENTS = 64;
+
+    private final String mAddress;
+    private final File mStoreDirectory;
+    private final Executor mStoreExecutor;
+    private final SensorFrame mFrame = new SensorFrame();
+    private final ReadingHistory mHistory = new ReadingHistory(HISTORY_CAPACITY);
+    private final DelimiterBuffer mBuffer = new DelimiterBuffer();
+    private final ReadingAggregator mAggregator;
+    private final CommandRequests mRequests;
+    private final PollTimer mPoller;
+    private final AdaptiveSampling.State mSamplingState = new AdaptiveSampling.State();
+    private final DeadbandFilter.State mDeadbandState = new DeadbandFilter.State();
+
+    private volatile FrameSnapshot mLastFrame = FrameSnapshot.EMPTY;
+    private Promise mConnectPromise;
+    private volatile RecordSync mSync;
+    private ReadingStore mStore;
+    private boolean mStoreFailed;
+    private boolean mStoreClosed;
+
+    /**
+     * Constructor
+     * @param address Address of device
+     * @param storeDirectory Directory of the persistent store of readings
+     * @param storeExecutor Executor for background work of the store
+     * @param aggregateListener Listener for closed aggregate windows
+     * @param commandSender Sender of commands to device
+     * @param poller Timer polling device
+     */
+    DeviceSession(String address, File storeDirectory, Executor storeExecutor, ReadingAggregator.Listener aggregateListener, CommandRequests.Sender commandSender, PollTimer poller) {
+        mAddress = address;
+        mStoreDirectory = storeDirectory;
+        mStoreExecutor = storeExecutor;
+        mAggregator = new ReadingAggregator(aggregateListener);
+        mRequests = new CommandRequests(commandSender);
+        mPoller = poller;
+    }
+
+    String getAddress() {
+        return mAddress;
+    }
+
+    /**
+     * @return Frame view owned by the reader thread of this device
+     */
+    SensorFrame getFrame() {
+        return mFrame;
+    }
+
+    ReadingHistory getHistory() {
+        return mHistory;
+    }
+
+    /**
+     * @return Aggregates of readings, only used by the reader thread
+     */
+    ReadingAggregator getAggregator() {
+        return mAggregator;
+    }
+
+    /**
+     * @return Commands waiting for their response
+     */
+    CommandRequests getRequests() {
+        return mRequests;
+    }
+
+    /**
+     * @return Timer polling device while polling is enabled
+     */
+    PollTimer getPoller() {
+        return mPoller;
+    }
+
+    /**
+     * @return Previous reading compared by adaptive polling
+     */
+    AdaptiveSampling.State getSamplingState() {
+        return mSamplingState;
+    }
+
+    /**
+     * @return Reading last passed by the deadband filter
+     */
+    DeadbandFilter.State getDeadbandState() {
+        return mDeadbandState;
+    }
+
+    /**
+     * @return Buffer for data read with a delimiter, synchronize on it when
+     * used outside of the reader thread
+     */
+    DelimiterBuffer getBuffer() {
+        return mBuffer;
+    }
+
+    /**
+     * @return Last frame received, safe to use from any thread
+     */
+    FrameSnapshot getLastFrame() {
+        return mLastFrame;
+    }
+
+    /**
+     * @return Persistent store of readings, opened on first use, null if it
+     * can not be opened or was closed
+     */
+    synchronized ReadingStore getStore() {
+        if (mStore == null && !mStoreFailed && !mStoreClosed) {
+            try {
+                mStore = ReadingStore.open(mStoreDirectory, STORE_MAX_SEGMENTS, mStoreExecutor);
+            } catch (IOException e) {
+                Log.e(TAG, "Can not open reading store of " + mAddress, e);
+                mStoreFailed = true;
+            }
+        }
+        return mStore;
+    }
+
+    /**
+     * Write pending readings to disk and close the store for good
+     */
+    synchronized void closeStore() {
+        mStoreClosed = true;
+        if (mStore != null) {
+            mStore.close();
+            mStore = null;
+        }
+    }
+
+    /**
+     * Remember the last frame received from device
+     * @param frame Snapshot of frame
+     */
+    void setLastFrame(FrameSnapshot frame) {
+        mLastFrame = frame;
+    }
+
+    /**
+     * @return Download of logged records, null if none was started
+     */
+    RecordSync getSync() {
+        return mSync;
+    }
+
+    void setSync(RecordSync sync) {
+        mSync = sync;
+    }
+
+    /**
+     * Set promise of pending connection attempt, a previous one is rejected
+     * @param promise Promise
+     */
+    synchronized void setConnectPromise(Promise promise) {
+        if (mConnectPromise != null) {
+            mConnectPromise.reject(new Exception("Connection to " + mAddress + " was restarted"));
+        }
+        mConnectPromise = promise;
+    }
+
+    /**
+     * Take promise of pending connection attempt
+     * @return Promise or null if there is none
+     */
+    synchronized Promise takeConnectPromise() {
+        Promise promise = mConnectPromise;
+        mConnectPromise = null;
+        return promise;
+    }
+}
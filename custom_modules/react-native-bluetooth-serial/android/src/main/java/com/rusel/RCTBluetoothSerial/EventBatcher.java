@@ -0,0 +1,146 @@
+package com.rusel.RCTBluetoothSerial;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+/**
+ * Collects read events into batches so that many frames cross the bridge
+ * in one event. A batch is flushed when it reaches the maximum size or
+ * when its first entry is older than the maximum delay, whichever comes
+ * first.
+ */
+class EventBatcher {
+
+    /**
+     * Receives flushed batches, called without holding the batch lock
+     */
+    interface Sink {
+        void onBatch(WritableArray batch);
+    }
+
+    private final Sink mSink;
+    private final ScheduledExecutorService mTimer;
+    private final Runnable mFlushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private int mMaxSize = 1;
+    private long mMaxDelay = 1;
+    private WritableArray mBatch;
+    private int mSize;
+    private ScheduledFuture<?> mPendingFlush;
+    private boolean mShutdown;
+
+    /**
+     * Constructor
+     * @param sink Sink which receives flushed batches
+     * @param timer Scheduler running the delayed flushes, owned by the caller
+     */
+    EventBatcher(Sink sink, ScheduledExecutorService timer) {
+        mSink = sink;
+        mTimer = timer;
+    }
+
+    /**
+     * Configure batching, pending entries are flushed first
+     * @param maxSize Maximum number of entries in batch, 1 or less disables batching
+     * @param maxDelay Maximum time in ms the first entry waits in batch, at least 1
+     */
+    void configure(int maxSize, long maxDelay) {
+        flush();
+        synchronized (this) {
+            mMaxSize = Math.max(1, maxSize);
+            mMaxDelay = Math.max(1, maxDelay);
+        }
+    }
+
+    /**
+     * @return Whether entries are batched or have to be sent directly
+     */
+    synchronized boolean isEnabled() {
+        return mMaxSize > 1;
+    }
+
+    /**
+     * Add entry to the current batch
+     * @param entry Entry
+     */
+    void add(WritableMap entry) {
+        WritableArray full;
+        synchronized (this) {
+            prepare();
+            mBatch.pushMap(entry);
+            full = complete();
+        }
+        if (full != null) mSink.onBatch(full);
+    }
+
+    /**
+     * Send pending entries right away
+     */
+    void flush() {
+        WritableArray batch;
+        synchronized (this) {
+            batch = take();
+        }
+        if (batch != null) mSink.onBatch(batch);
+    }
+
+    /**
+     * Flush pending entries, later entries are only sent when a batch fills up
+     */
+    void shutdown() {
+        synchronized (this) {
+            mShutdown = true;
+        }
+        flush();
+    }
+
+    /**
+     * Start a new batch if there is none and arm the delay timer
+     */
+    private void prepare() {
+        if (mBatch == null) {
+            mBatch = Arguments.createArray();
+            mSize = 0;
+            if (!mShutdown) {
+                try {
+                    mPendingFlush = mTimer.schedule(mFlushTask, mMaxDelay, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    // Scheduler was shut down
+                }
+            }
+        }
+        mSize++;
+    }
+
+    /**
+     * @return Batch to send if it reached its maximum size, otherwise null
+     */
+    private WritableArray complete() {
+        return mSize >= mMaxSize ? take() : null;
+    }
+
+    /**
+     * Detach the current batch and disarm the delay timer
+     */
+    private WritableArray take() {
+        WritableArray batch = mBatch;
+        mBatch = null;
+        mSize = 0;
+        if (mPendingFlush != null) {
+            mPendingFlush.cancel(false);
+            mPendingFlush = null;
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,77 @@
+package com.rusel.RCTBluetoothSerial;
+
+/**
+ * Fields of the events sent to javascript.
+ *
+ * The module writes them into bridge maps through {@link Fields}, which
+ * keeps this class free of React Native so benchmarks measure the same
+ * code on a JVM.
+ */
+final class EventFormat {
+    static final int NO_DEVICE_CLASS = -1;
+
+    /**
+     * Destination of event fields, like a WritableMap
+     */
+    interface Fields {
+        void putInt(String key, int value);
+
+        void putDouble(String key, double value);
+
+        void putString(String key, String value);
+    }
+
+    private EventFormat() {
+    }
+
+    /**
+     * Format reading as the space separated text of the string read event
+     * @param frame Frame with data
+     * @return Temperature, humidity, co2, battery, pm1, pm25, pm10 and tvoc
+     */
+    static String toText(SensorFrame frame) {
+        return frame.getTemperature() + " " + frame.getHumidity() + " " + frame.getCo2() + " " + frame.getBattery()
+                + " " + frame.getPm1() + " " + frame.getPm25() + " " + frame.getPm10() + " " + frame.getTvoc();
+    }
+
+    /**
+     * Write numeric fields of frame
+     * @param frame Decoded frame
+     * @param address Address of device which sent the frame
+     * @param timestamp Time the frame was received
+     * @param schema Version of the data schema
+     * @param out Destination
+     */
+    static void putFrame(SensorFrame frame, String address, long timestamp, int schema, Fields out) {
+        out.putInt("schema", schema);
+        out.putString("id", address);
+        out.putDouble("timestamp", timestamp);
+        out.putInt("commandCode", frame.getCommandCode());
+        out.putInt("status", frame.getStatus());
+        out.putInt("battery", frame.getBattery());
+        out.putDouble("lastLoggedRecord", frame.getLastLoggedRecord() & 0xffffffffL);
+        out.putInt("temperature", frame.getTemperature());
+        out.putInt("humidity", frame.getHumidity());
+        out.putInt("co2", frame.getCo2());
+        out.putInt("pm1", frame.getPm1());
+        out.putInt("pm25", frame.getPm25());
+        out.putInt("pm10", frame.getPm10());
+        out.putInt("tvoc", frame.getTvoc());
+    }
+
+    /**
+     * Write fields of device
+     * @param name Name of device
+     * @param address Address of device
+     * @param deviceClass Bluetooth device class, NO_DEVICE_CLASS if unknown
+     * @param out Destination
+     */
+    static void putDevice(String name, String address, int deviceClass, Fields out) {
+        out.putString("name", name);
+        out.putString("address", address);
+        out.putString("id", address);
+        if (deviceClass != NO_DEVICE_CLASS) {
+            out.putInt("class", deviceClass);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.rusel.RCTBluetoothSerial;
+
+/**
+ * Immutable copy of a decoded frame together with the time it was
+ * received.
+ *
+ * The decoder reuses its frame array for the next frame, so the reader
+ * thread copies every frame it publishes. Other threads read a snapshot
+ * through a volatile reference without locking and always see a whole
+ * frame and its matching timestamp.
+ */
+final class FrameSnapshot {
+    static final FrameSnapshot EMPTY = new FrameSnapshot(new byte[SensorFrame.LENGTH], 0);
+
+    private final byte[] mFrame;
+    private final long mTimestamp;
+
+    private FrameSnapshot(byte[] frame, long timestamp) {
+        mFrame = frame;
+        mTimestamp = timestamp;
+    }
+
+    /**
+     * Copy frame
+     * @param data Array holding the frame
+     * @param offset Offset of the frame in array
+     * @param timestamp Time the frame was received
+     * @return Snapshot
+     */
+    static FrameSnapshot of(byte[] data, int offset, long timestamp) {
+        byte[] frame = new byte[SensorFrame.LENGTH];
+        System.arraycopy(data, offset, frame, 0, SensorFrame.LENGTH);
+        return new FrameSnapshot(frame, timestamp);
+    }
+
+    /**
+     * Point view at the frame, the view must not be shared between threads
+     * @param view View
+     * @return View
+     */
+    SensorFrame wrap(SensorFrame view) {
+        return view.wrap(mFrame, 0);
+    }
+
+    /**
+     * @return Time the frame was received in ms since epoch, 0 for none
+     */
+    long getTimestamp() {
+        return mTimestamp;
+    }
+}
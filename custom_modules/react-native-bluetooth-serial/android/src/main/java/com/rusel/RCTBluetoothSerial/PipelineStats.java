@@ -0,0 +1,180 @@
+package com.rusel.RCTBluetoothSerial;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms of the data path, from connecting over
+ * decoding to emitting events.
+ *
+ * Everything is updated with single atomic operations, so reader, connect
+ * and module threads record without taking locks and a snapshot can be
+ * read at any time. Values of a snapshot are read one by one and may be
+ * off by the updates made while reading.
+ */
+final class PipelineStats {
+
+    /**
+     * Latency histogram with fixed buckets, bounds in microseconds
+     */
+    static final class Histogram {
+        // Upper bounds of the buckets, the last bucket holds everything above
+        static final long[] BOUNDS = {
+                10, 25, 50, 100, 250, 500,
+                1000, 2500, 5000, 10000, 25000, 50000,
+                100000, 250000, 500000, 1000000, 2500000, 5000000,
+                10000000, 30000000
+        };
+
+        private final AtomicLongArray mBuckets = new AtomicLongArray(BOUNDS.length + 1);
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mSum = new AtomicLong();
+        private final AtomicLong mMax = new AtomicLong();
+
+        /**
+         * Record latency
+         * @param micros Latency in microseconds
+         */
+        void record(long micros) {
+            if (micros < 0) micros = 0;
+            int bucket = 0;
+            while (bucket < BOUNDS.length && micros > BOUNDS[bucket]) {
+                bucket++;
+            }
+            mBuckets.incrementAndGet(bucket);
+            mCount.incrementAndGet();
+            mSum.addAndGet(micros);
+            long max;
+            while (micros > (max = mMax.get())) {
+                if (mMax.compareAndSet(max, micros)) break;
+            }
+        }
+
+        /**
+         * Record time passed since start
+         * @param startNanos Start as returned by System.nanoTime
+         */
+        void recordSince(long startNanos) {
+            record((System.nanoTime() - startNanos) / 1000);
+        }
+
+        long getCount() {
+            return mCount.get();
+        }
+
+        /**
+         * @return Sum of recorded latencies in microseconds
+         */
+        long getSum() {
+            return mSum.get();
+        }
+
+        /**
+         * @return Highest recorded latency in microseconds
+         */
+        long getMax() {
+            return mMax.get();
+        }
+
+        /**
+         * @param bucket Index of bucket, up to BOUNDS.length
+         * @return Number of latencies in bucket
+         */
+        long getBucket(int bucket) {
+            return mBuckets.get(bucket);
+        }
+
+        /**
+         * Estimate percentile as the upper bound of the bucket it falls in
+         * @param percentile Percentile between 0 and 100
+         * @return Latency in microseconds, the maximum if it falls in the last bucket
+         */
+        long getPercentile(double percentile) {
+            long total = 0;
+            long[] counts = new long[BOUNDS.length + 1];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = mBuckets.get(i);
+                total += counts[i];
+            }
+            if (total == 0) return 0;
+
+            long rank = (long) Math.ceil(percentile / 100 * total);
+            long seen = 0;
+            for (int i = 0; i < BOUNDS.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(BOUNDS[i], getMax());
+            }
+            return getMax();
+        }
+
+        void reset() {
+            for (int i = 0; i < mBuckets.length(); i++) {
+                mBuckets.set(i, 0);
+            }
+            mCount.set(0);
+            mSum.set(0);
+            mMax.set(0);
+        }
+    }
+
+    // Connecting
+    final AtomicLong connectAttempts = new AtomicLong();
+    final AtomicLong connectFailures = new AtomicLong();
+    final AtomicLong connectTimeouts = new AtomicLong();
+    final AtomicLong connectionsLost = new AtomicLong();
+    final AtomicLong reconnects = new AtomicLong();
+
+    // Reading and decoding
+    final AtomicLong bytesRead = new AtomicLong();
+    final AtomicLong framesDecoded = new AtomicLong();
+    final AtomicLong framesRejected = new AtomicLong();
+    final AtomicLong bytesSkipped = new AtomicLong();
+
+    // Writing
+    final AtomicLong bytesWritten = new AtomicLong();
+    final AtomicLong writesFailed = new AtomicLong();
+
+    // Events to javascript
+    final AtomicLong eventsSent = new AtomicLong();
+    final AtomicLong eventsDropped = new AtomicLong();
+    /** Read events left out by the deadband filter */
+    final AtomicLong eventsFiltered = new AtomicLong();
+
+    /** Successful socket connect of a single strategy */
+    final Histogram connect = new Histogram();
+    /** Decoding of one read from the transport, without handling the frames */
+    final Histogram decode = new Histogram();
+    /** Handling of one decoded frame by the module, including its event */
+    final Histogram frame = new Histogram();
+    /** Passing one event to the javascript bridge */
+    final Histogram emit = new Histogram();
+
+    private final AtomicLong mStart = new AtomicLong(System.currentTimeMillis());
+
+    /**
+     * @return Time the statistics were started or last reset, in ms since epoch
+     */
+    long getStart() {
+        return mStart.get();
+    }
+
+    /**
+     * Start all statistics over
+     */
+    void reset() {
+        AtomicLong[] counters = {
+                connectAttempts, connectFailures, connectTimeouts, connectionsLost, reconnects,
+                bytesRead, framesDecoded, framesRejected, bytesSkipped,
+                bytesWritten, writesFailed,
+                eventsSent, eventsDropped, eventsFiltered
+        };
+        for (AtomicLong counter : counters) {
+            counter.set(0);
+        }
+        connect.reset();
+        decode.reset();
+        frame.reset();
+        emit.reset();
+        mStart.set(System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,115 @@
+package com.rusel.RCTBluetoothSerial;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timer which polls a device at a steady rate.
+ *
+ * Ticks are scheduled one at a time against absolute deadlines, each one
+ * interval after the previous deadline instead of after the previous
+ * tick ran, so delays of single ticks do not add up. Ticks missed while
+ * the scheduler was busy are skipped rather than fired in a burst. The
+ * interval can be changed while running and applies from the next tick.
+ */
+class PollTimer {
+
+    /**
+     * Receives ticks, called on the scheduler thread
+     */
+    interface Listener {
+        void onPoll();
+    }
+
+    private final ScheduledExecutorService mScheduler;
+    private final Listener mListener;
+
+    private long mInterval;
+    private long mDeadline;
+    private ScheduledFuture<?> mFuture;
+    private Runnable mRunning;
+
+    /**
+     * Constructor
+     * @param scheduler Scheduler the ticks run on
+     * @param listener Listener
+     */
+    PollTimer(ScheduledExecutorService scheduler, Listener listener) {
+        mScheduler = scheduler;
+        mListener = listener;
+    }
+
+    /**
+     * Start polling right away, restarting if already running
+     * @param interval Interval in ms
+     */
+    synchronized void start(long interval) {
+        stop();
+        mInterval = Math.max(1, interval);
+        mDeadline = System.nanoTime();
+        // Each start gets its own tick, so a tick of a previous start which already began does not go on
+        mRunning = new Runnable() {
+            @Override
+            public void run() {
+                tick(this);
+            }
+        };
+        schedule(0);
+    }
+
+    /**
+     * Change interval of running timer, it applies from the next tick
+     * @param interval Interval in ms
+     */
+    synchronized void setInterval(long interval) {
+        mInterval = Math.max(1, interval);
+    }
+
+    synchronized long getInterval() {
+        return mInterval;
+    }
+
+    synchronized boolean isRunning() {
+        return mRunning != null;
+    }
+
+    /**
+     * Stop polling
+     */
+    synchronized void stop() {
+        if (mFuture != null) {
+            mFuture.cancel(false);
+            mFuture = null;
+        }
+        mRunning = null;
+    }
+
+    private void tick(Runnable tick) {
+        synchronized (this) {
+            if (tick != mRunning) return;
+        }
+        mListener.onPoll();
+        synchronized (this) {
+            if (tick != mRunning) return;
+            long now = System.nanoTime();
+            mDeadline += TimeUnit.MILLISECONDS.toNanos(mInterval);
+            if (mDeadline - now < 0) {
+                // Skip ticks missed while the scheduler was busy
+                mDeadline = now;
+            }
+            schedule(mDeadline - now);
+        }
+    }
+
+    private void schedule(long delayNanos) {
+        try {
+            mFuture = mScheduler.schedule(mRunning, delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // Scheduler shut down
+            mFuture = null;
+            mRunning = null;
+        }
+    }
+}
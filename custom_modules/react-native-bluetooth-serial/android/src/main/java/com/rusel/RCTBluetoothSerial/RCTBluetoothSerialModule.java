@@ -1,9 +1,29 @@
 package com.rusel.RCTBluetoothSerial;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.Nullable;
 
 import android.app.Activity;
@@ -14,6 +34,7 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.Build;
+import android.os.SystemClock;
 import android.util.Log;
 import android.util.Base64;
 
@@ -26,6 +47,7 @@ import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
 
 import static com.rusel.RCTBluetoothSerial.RCTBluetoothSerialPackage.TAG;
@@ -33,8 +55,8 @@ import static com.rusel.RCTBluetoothSerial.RCTBluetoothSerialPackage.TAG;
 @SuppressWarnings("unused")
 public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule implements ActivityEventListener, LifecycleEventListener {
 
-    // Debugging
-    private static final boolean D = true;
+    // Debugging of the module lifecycle, the data path is recorded by mTrace
+    private static final boolean D = false;
 
     // Event names
     private static final String BT_ENABLED = "bluetoothEnabled";
@@ -42,27 +64,100 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule impleme
     private static final String CONN_SUCCESS = "connectionSuccess";
     private static final String CONN_FAILED = "connectionFailed";
     private static final String CONN_LOST = "connectionLost";
+    private static final String RECONNECTING = "reconnecting";
+    private static final String RECONNECTED = "reconnected";
+    private static final String DEVICE_FOUND = "deviceFound";
     private static final String DEVICE_READ = "read";
+    private static final String DEVICE_READ_BATCH = "readBatch";
+    private static final String SYNC_PROGRESS = "syncProgress";
+    private static final String AGGREGATE = "aggregate";
+    private static final String STATS = "stats";
     private static final String ERROR = "error";
 
     // Other stuff
     private static final int REQUEST_ENABLE_BLUETOOTH = 1;
     private static final int REQUEST_PAIR_DEVICE = 2;
+    private static final int DATA_SCHEMA_VERSION = 1;
+    private static final int SYNC_PROGRESS_RECORDS = 64;
+    private static final int TCP_CONNECT_TIMEOUT = 5000;
+    private static final int TRACE_CAPACITY = 4096;
+    private static final long TRACE_DUMP_INTERVAL = 60 * 1000;
+    private static final int TRACE_DUMP_FILES = 5;
+    private static final long AGGREGATE_CHECK_INTERVAL = 1000;
+    private static final long AGGREGATE_GRACE = 2000;
+    private static final int[] ADAPTIVE_CHANNELS = {SensorFrame.CHANNEL_CO2, SensorFrame.CHANNEL_PM25, SensorFrame.CHANNEL_TVOC};
+    private static final double[] ADAPTIVE_THRESHOLDS = {10, 2, 10};
     // Members
     private BluetoothAdapter mBluetoothAdapter;
     private RCTBluetoothSerialService mBluetoothService;
     private ReactApplicationContext mReactContext;
 
-    private StringBuffer mBuffer = new StringBuffer();
+    // Devices by address, the current one is the last device connect was called for
+    private final ConcurrentHashMap<String, DeviceSession> mSessions = new ConcurrentHashMap<>();
+    private volatile DeviceSession mCurrentSession;
+
+    // Timer for work which does not belong to a single thread, like request timeouts
+    private final ScheduledExecutorService mScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "BluetoothSerialScheduler");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    // File work which must not hold up the scheduler or a reader, like packing stored readings and writing traces
+    private final ExecutorService mIoExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "BluetoothSerialIo");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    // Counters and latencies of the data path, periodically sent as event if enabled
+    private final PipelineStats mStats = new PipelineStats();
+    private ScheduledFuture<?> mStatsFuture;
+
+    // Trace of the data path, dumped to the cache directory on errors if enabled
+    private final TraceRecorder mTrace = new TraceRecorder(TRACE_CAPACITY);
+    private volatile boolean mTraceDumpOnError = true;
+    private final AtomicLong mLastTraceDump = new AtomicLong();
 
-    private ByteBuffer sensorBuffer = ByteBuffer.allocate(1024);
+    // Root of the persistent stores of readings, one directory per device
+    private final File mStoreRoot;
+
+    // Discovery state, guarded by the module, devices by address in order of discovery
+    private BroadcastReceiver mDiscoveryReceiver;
+    private final Map<String, DiscoveredDevice> mDiscoveredDevices = new LinkedHashMap<>();
+    private String mMatchName;
+    private String mMatchAddress;
+
+    // Frame view for the module thread, reader threads use the one of their session
+    private final SensorFrame mReadFrame = new SensorFrame();
 
     // Promises
     private Promise mEnabledPromise;
-    private Promise mConnectedPromise;
     private Promise mDeviceDiscoveryPromise;
+    private Promise mDeviceMatchPromise;
     private Promise mPairDevicePromise;
-    private String delimiter = "";
+    private volatile byte[] delimiter = new byte[0];
+    private final EventBatcher mReadBatcher = new EventBatcher(new EventBatcher.Sink() {
+        @Override
+        public void onBatch(WritableArray batch) {
+            WritableMap params = Arguments.createMap();
+            params.putArray("data", batch);
+            sendEvent(DEVICE_READ_BATCH, params);
+        }
+    }, mScheduler);
+    private boolean structuredData = false;
+    private volatile boolean readEvents = true;
+    private volatile boolean aggregateEvents = false;
+    private volatile byte[] mPollCommand;
+    private volatile long mPollInterval;
+    private volatile AdaptiveSampling mAdaptiveSampling;
+    private volatile DeadbandFilter mDeadband;
 
     public RCTBluetoothSerialModule(ReactApplicationContext reactContext) {
         super(reactContext);
@@ -70,15 +165,27 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule impleme
         if (D) Log.d(TAG, "Bluetooth module started");
 
         mReactContext = reactContext;
+        mStoreRoot = new File(reactContext.getFilesDir(), "readings");
 
         if (mBluetoothAdapter == null) {
             mBluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
         }
 
         if (mBluetoothService == null) {
-            mBluetoothService = new RCTBluetoothSerialService(this);
+            mBluetoothService = new RCTBluetoothSerialService(this, mScheduler, mStats, mTrace);
         }
 
+        // Windows of quiet devices close on time instead of with their next reading
+        mScheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                long now = System.currentTimeMillis() - AGGREGATE_GRACE;
+                for (DeviceSession session : mSessions.values()) {
+                    session.getAggregator().closeDue(now);
+                }
+            }
+        }, AGGREGATE_CHECK_INTERVAL, AGGREGATE_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+
         if (mBluetoothAdapter != null && mBluetoothAdapter.isEnabled()) {
             sendEvent(BT_ENABLED, null);
         } else {
@@ -149,6 +256,12 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule impleme
         if (D) Log.d(TAG, "Catalyst instance destroyed");
         super.onCatalystInstanceDestroy();
         mBluetoothService.stop();
+        mReadBatcher.shutdown();
+        mScheduler.shutdownNow();
+        for (DeviceSession session : mSessions.values()) {
+            session.closeStore();
+        }
+        mIoExecutor.shutdown();
     }
 
     /*******************************/
@@ -219,7 +332,65 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule impleme
 
     @ReactMethod
     public void withDelimiter(String delimiter, Promise promise) {
-        this.delimiter = delimiter;
+        this.delimiter = DelimiterBuffer.toBytes(delimiter);
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    /**
+     * Set how long a single connection attempt may take, 0 to wait until the system gives up
+     */
+    public void setConnectTimeout(int timeout, Promise promise) {
+        mBluetoothService.setConnectTimeout(timeout);
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    /**
+     * Configure reconnection after connection loss, attempts 0 disables it
+     */
+    public void setAutoReconnect(int attempts, int initialDelay, int maxDelay, Promise promise) {
+        mBluetoothService.setAutoReconnect(attempts, initialDelay, maxDelay);
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    /**
+     * Turn read events for every frame on or off, readings are still kept natively
+     */
+    public void withReadEvents(boolean enabled, Promise promise) {
+        this.readEvents = enabled;
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    /**
+     * Turn aggregate events for closed 1 minute, 15 minute and 1 hour windows on or off
+     */
+    public void withAggregates(boolean enabled, Promise promise) {
+        this.aggregateEvents = enabled;
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    /**
+     * Switch between numeric fields and the legacy space joined string for read data
+     */
+    public void withStructuredData(boolean enabled, Promise promise) {
+        this.structuredData = enabled;
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    /**
+     * Deliver read data in batches, flushed after maxBatchSize entries or maxDelay ms
+     */
+    public void setEventBatching(int maxBatchSize, int maxDelay, Promise promise) {
+        if (maxBatchSize > 1 && maxDelay <= 0) {
+            promise.reject(new Exception("Batch delay must be positive"));
+            return;
+        }
+        mReadBatcher.configure(maxBatchSize, maxDelay);
         promise.resolve(true);
     }
 
@@ -250,14 +421,50 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule impleme
     public void discoverUnpairedDevices(final Promise promise) {
         if (D) Log.d(TAG, "Discover unpaired called");
 
-        mDeviceDiscoveryPromise = promise;
-        registerBluetoothDeviceDiscoveryReceiver();
-
-        if (mBluetoothAdapter != null) {
-            mBluetoothAdapter.startDiscovery();
-        } else {
+        if (mBluetoothAdapter == null) {
             promise.resolve(Arguments.createArray());
+            return;
+        }
+
+        synchronized (this) {
+            if (mDeviceDiscoveryPromise != null) {
+                mDeviceDiscoveryPromise.reject(new Exception("Discovery was restarted"));
+            }
+            mDeviceDiscoveryPromise = promise;
+        }
+        startDeviceDiscovery();
+    }
+
+    @ReactMethod
+    /**
+     * Discover devices, emitting a deviceFound event for every device as soon as it is found.
+     * With a name or address filter discovery stops at the first matching device and resolves
+     * to it, or to null if none was found. Without filter resolves to all found devices.
+     */
+    public void discoverDevices(ReadableMap filter, final Promise promise) {
+        if (D) Log.d(TAG, "Discover devices called");
+
+        if (mBluetoothAdapter == null) {
+            promise.reject(new Exception("Bluetooth adapter not found"));
+            return;
+        }
+
+        synchronized (this) {
+            if (mDeviceMatchPromise != null) {
+                mDeviceMatchPromise.reject(new Exception("Discovery was restarted"));
+            }
+            mDeviceMatchPromise = promise;
+            mMatchName = filter.hasKey("name") ? filter.getString("name").toLowerCase() : null;
+            mMatchAddress = filter.hasKey("address") ? filter.getString("address").toUpperCase() : null;
+
+            // A device found earlier by a running discovery may match already
+            if (mDiscoveryReceiver != null) {
+                for (DiscoveredDevice device : mDiscoveredDevices.values()) {
+                    if (matchDevice(device)) return;
+                }
+            }
         }
+        startDeviceDiscovery();
     }
 
     @ReactMethod
@@ -326,10 +533,12 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule impleme
      * Connect to device by id
      */
     public void connect(String id, Promise promise) {
-        mConnectedPromise = promise;
         if (mBluetoothAdapter != null) {
             BluetoothDevice device = mBluetoothAdapter.getRemoteDevice(id);
             if (device != null) {
+                DeviceSession session = getSession(id);
+                session.setConnectPromise(promise);
+                mCurrentSession = session;
                 mBluetoothService.connect(device);
             } else {
                 promise.reject(new Exception("Could not connect to " + id));
@@ -341,281 +550,1370 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule impleme
 
     @ReactMethod
     /**
-     * Disconnect from device
+     * Connect to a device simulator or serial bridge over TCP, the connection
+     * is handled like one to a Bluetooth device with id host:port
+     */
+    public void connectTcp(final String host, final int port, final Promise promise) {
+        final String id = host + ":" + port;
+        final DeviceSession session = getSession(id);
+        session.setConnectPromise(promise);
+        mCurrentSession = session;
+        // Connecting blocks up to the timeout, so each attempt gets its own thread like Bluetooth connects
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mBluetoothService.connect(id, StreamTransport.connect(host, port, TCP_CONNECT_TIMEOUT));
+                } catch (IOException e) {
+                    Log.e(TAG, "Unable to connect to " + id, e);
+                    onConnectionFailed(id, "Unable to connect to device");
+                }
+            }
+        }, "TcpConnectThread").start();
+    }
+
+    @ReactMethod
+    /**
+     * Disconnect from all devices
      */
     public void disconnect(Promise promise) {
         mBluetoothService.stop();
+        for (DeviceSession session : mSessions.values()) {
+            session.getPoller().stop();
+            session.getRequests().cancel(new Exception("Disconnected from " + session.getAddress()));
+            session.getAggregator().flush();
+        }
+        mReadBatcher.flush();
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    /**
+     * Disconnect from device by id, other connections stay open
+     */
+    public void disconnectDevice(String id, Promise promise) {
+        mBluetoothService.stop(id);
+        DeviceSession session = mSessions.get(id);
+        if (session != null) {
+            session.getPoller().stop();
+            session.getRequests().cancel(new Exception("Disconnected from " + id));
+            session.getAggregator().flush();
+        }
+        mReadBatcher.flush();
         promise.resolve(true);
     }
 
     @ReactMethod
     /**
-     * Check if device is connected
+     * Check if any device is connected
      */
     public void isConnected(Promise promise) {
         promise.resolve(mBluetoothService.isConnected());
     }
 
-    /*********************/
-    /** Write to device **/
+    @ReactMethod
+    /**
+     * Check if device is connected by id
+     */
+    public void isDeviceConnected(String id, Promise promise) {
+        promise.resolve(mBluetoothService.isConnected(id));
+    }
 
     @ReactMethod
     /**
-     * Write to device over serial port
+     * List ids of connected devices
      */
-    public void writeToDevice(String message, Promise promise) {
-        if (D) Log.d(TAG, "Write " + message);
-        byte[] data = Base64.decode(message, Base64.DEFAULT);
-        mBluetoothService.write(data);
-        promise.resolve(true);
+    public void listConnected(Promise promise) {
+        WritableArray ids = Arguments.createArray();
+        for (String address : mBluetoothService.getConnectedAddresses()) {
+            ids.pushString(address);
+        }
+        promise.resolve(ids);
     }
 
-    /**********************/
-    /** Read from device **/
+    /*********************/
+    /** Write to device **/
 
     @ReactMethod
     /**
-     * Read from device over serial port
+     * Write to device over serial port
      */
-    public void readFromDevice(Promise promise) {
-        byte[] arr = sensorBuffer.array();
-        String data = "";
-        ByteOrder order = ByteOrder.LITTLE_ENDIAN;
-        if( arr.length > 0) {
-            if (arr[0] != 0 && (arr[21] != 0 || arr[22] != 0)) {
-                short signature = ByteBuffer.wrap(new byte[]{arr[0], arr[1]}).order(order).getShort();
-                short commandCode = arr[2];
-                commandCode &= 0xff;
-                short status = arr[3];
-                status &= 0xff;
-                short battery = arr[4];
-                battery &= 0xff;
-                int lastLoggedRecord = ByteBuffer.wrap(new byte[]{arr[5], arr[6], arr[7], arr[8]}).order(order).getInt();
-                short temperature = ByteBuffer.wrap(new byte[]{arr[9], arr[10]}).order(order).getShort();
-                short humidity = ByteBuffer.wrap(new byte[]{arr[11], arr[12]}).order(order).getShort();
-                short co2 = ByteBuffer.wrap(new byte[]{arr[13], arr[14]}).order(order).getShort();
-                short pm1 = ByteBuffer.wrap(new byte[]{arr[15], arr[16]}).order(order).getShort();
-                short pm25 = ByteBuffer.wrap(new byte[]{arr[17], arr[18]}).order(order).getShort();
-                short pm10 = ByteBuffer.wrap(new byte[]{arr[19], arr[20]}).order(order).getShort();
-                short tvoc = ByteBuffer.wrap(new byte[]{arr[21], arr[22]}).order(order).getShort();
-                Log.i("TESTDATA1123", arr[1] + " " + arr[2]);
-                Log.i("TESTDATAHELP", "Темперура = " + temperature + " Влажность = " + humidity + " co2 = " + co2 + " battery = " + battery + " " + lastLoggedRecord + " " + temperature + " " + humidity + " " + co2
-                        + " " + pm1 + " " + pm25 + " " + pm10 + " " + tvoc);
-                data = temperature + " " + humidity + " " + co2 + " " + battery + " " + lastLoggedRecord + " " + temperature + " " + humidity + " " + co2
-                        + " " + pm1 + " " + pm25 + " " + pm10 + " " + tvoc;
-            } else {
-                data = "Test";
-            }
+    public void writeToDevice(String message, final Promise promise) {
+        byte[] data = Base64.decode(message, Base64.DEFAULT);
+        List<String> addresses = mBluetoothService.getConnectedAddresses();
+        if (addresses.isEmpty()) {
+            promise.resolve(true);
+            return;
         }
 
-        promise.resolve(data);
+        // Resolve once the message was sent to every device, reject on the first failure
+        final AtomicInteger pending = new AtomicInteger(addresses.size());
+        SerialWriter.Callback callback = new SerialWriter.Callback() {
+            @Override
+            public void onWritten() {
+                if (pending.decrementAndGet() == 0) promise.resolve(true);
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                if (pending.getAndSet(-1) > 0) promise.reject(e);
+            }
+        };
+        for (String address : addresses) {
+            if (!mBluetoothService.write(address, data, callback)) {
+                callback.onWritten(); // Disconnected meanwhile, nothing to wait for
+            }
+        }
     }
 
     @ReactMethod
-    public void readUntilDelimiter(String delimiter, Promise promise) {
-        promise.resolve(readUntil(delimiter));
-    }
+    /**
+     * Write to device by id over serial port
+     */
+    public void writeToDeviceId(String id, String message, final Promise promise) {
+        byte[] data = Base64.decode(message, Base64.DEFAULT);
+        boolean connected = mBluetoothService.write(id, data, new SerialWriter.Callback() {
+            @Override
+            public void onWritten() {
+                promise.resolve(true);
+            }
 
+            @Override
+            public void onFailed(Exception e) {
+                promise.reject(e);
+            }
+        });
+        if (!connected) {
+            promise.reject(new Exception("Not connected to " + id));
+        }
+    }
 
-    /***********/
-    /** Other **/
+    /**********************/
+    /** Read from device **/
 
     @ReactMethod
     /**
-     * Clear data in buffer
+     * Read from device over serial port
      */
-    public void clear(Promise promise) {
-        mBuffer.setLength(0);
-        promise.resolve(true);
+    public void readFromDevice(Promise promise) {
+        readFrame(mCurrentSession, promise);
     }
 
     @ReactMethod
     /**
-     * Get length of data available to read
+     * Read from device by id over serial port
      */
-    public void available(Promise promise) {
-        promise.resolve(mBuffer.length());
+    public void readFromDeviceId(String id, Promise promise) {
+        readFrame(mSessions.get(id), promise);
     }
 
-
     @ReactMethod
     /**
-     * Set bluetooth adapter name
+     * Read the newest reading of device kept in history, resolves null if there is none
      */
-    public void setAdapterName(String newName, Promise promise) {
-        if (mBluetoothAdapter != null) {
-            mBluetoothAdapter.setName(newName);
+    public void readLatest(String id, Promise promise) {
+        DeviceSession session = mSessions.get(id);
+        if (session == null) {
+            promise.resolve(null);
+            return;
+        }
+        ReadingHistory history = session.getHistory();
+        synchronized (history) {
+            promise.resolve(history.size() > 0 ? readingToWritableMap(id, history, 0) : null);
         }
-        promise.resolve(true);
     }
 
-    /****************************************/
-    /** Methods available to whole package **/
-    /****************************************/
-
+    @ReactMethod
     /**
-     * Handle connection success
-     * @param msg Additional message
+     * Read up to count newest readings of device kept in history, oldest first
      */
-    void onConnectionSuccess(String msg) {
-        WritableMap params = Arguments.createMap();
-        params.putString("message", msg);
-        sendEvent(CONN_SUCCESS, null);
-        if (mConnectedPromise != null) {
-            mConnectedPromise.resolve(params);
+    public void readHistory(String id, int count, Promise promise) {
+        DeviceSession session = mSessions.get(id);
+        if (session == null) {
+            promise.resolve(Arguments.createArray());
+            return;
+        }
+        ReadingHistory history = session.getHistory();
+        synchronized (history) {
+            promise.resolve(historyToWritableArray(id, history, Math.max(0, Math.min(count, history.size()))));
         }
-        mConnectedPromise = null;
     }
 
+    @ReactMethod
     /**
-     * handle connection failure
-     * @param msg Additional message
+     * Read readings of device kept in history received at or after timestamp, oldest first
      */
-    void onConnectionFailed(String msg) {
-        WritableMap params = Arguments.createMap();
-        params.putString("message", msg);
-        sendEvent(CONN_FAILED, null);
-        if (mConnectedPromise != null) {
-            mConnectedPromise.reject(new Exception(msg));
+    public void readHistorySince(String id, double timestamp, Promise promise) {
+        DeviceSession session = mSessions.get(id);
+        if (session == null) {
+            promise.resolve(Arguments.createArray());
+            return;
+        }
+        ReadingHistory history = session.getHistory();
+        synchronized (history) {
+            promise.resolve(historyToWritableArray(id, history, history.countSince((long) timestamp)));
         }
-        mConnectedPromise = null;
     }
 
+    @ReactMethod
     /**
-     * Handle lost connection
-     * @param msg Message
+     * Read readings of device kept on disk, received from timestamp up to but
+     * not including to, at most limit of them starting with the oldest
      */
-    void onConnectionLost (String msg) {
-        WritableMap params = Arguments.createMap();
-        params.putString("message", msg);
-        sendEvent(CONN_LOST, params);
+    public void readStored(String id, double from, double to, int limit, Promise promise) {
+        DeviceSession session = getStoredSession(id);
+        ReadingStore store = session != null ? session.getStore() : null;
+        if (store == null) {
+            promise.reject(new Exception("No stored readings of " + id));
+            return;
+        }
+
+        WritableArray readings = Arguments.createArray();
+        if (limit > 0) {
+            ReadingCodec.Columns page = new ReadingCodec.Columns(Math.min(limit, ReadingStore.BLOCK_READINGS));
+            StoredReading reading = new StoredReading();
+            int count = 0;
+            long next = 0;
+            try {
+                do {
+                    // Readings are copied out page by page, maps are built while appending goes on
+                    next = store.query((long) from, (long) to, next, page);
+                    for (int i = 0; i < page.size && count < limit; i++, count++) {
+                        readings.pushMap(storedReadingToWritableMap(id, reading.wrap(page, i)));
+                    }
+                } while (next != ReadingStore.DONE && count < limit);
+            } catch (IOException e) {
+                promise.reject(e);
+                return;
+            }
+        }
+        promise.resolve(readings);
     }
 
+    @ReactMethod
     /**
-     * Handle error
-     * @param e Exception
+     * Write readings of device kept on disk, received from timestamp up to but
+     * not including to, into a compressed export file
      */
-    void onError (Exception e) {
-        WritableMap params = Arguments.createMap();
-        params.putString("message", e.getMessage());
-        sendEvent(ERROR, params);
+    public void exportStored(String id, double from, double to, Promise promise) {
+        DeviceSession session = getStoredSession(id);
+        ReadingStore store = session != null ? session.getStore() : null;
+        if (store == null) {
+            promise.reject(new Exception("No stored readings of " + id));
+            return;
+        }
+
+        File directory = new File(mReactContext.getCacheDir(), "exports");
+        File file = new File(directory, id.replace(':', '_') + "-" + (long) from + "-" + (long) to + ".rblk");
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Can not create " + directory);
+            }
+            int count = store.export((long) from, (long) to, file);
+            WritableMap result = Arguments.createMap();
+            result.putString("path", file.getAbsolutePath());
+            result.putInt("count", count);
+            result.putDouble("size", file.length());
+            promise.resolve(result);
+        } catch (IOException e) {
+            promise.reject(e);
+        }
     }
 
+    @ReactMethod
     /**
-     * Handle read
-     * @param data Message
+     * Download logged records of device starting at fromRecord, several
+     * requests are kept in flight and records are reported by syncProgress events
      */
-    void onData (ByteBuffer  data) {
-        sensorBuffer = data;
-        byte[] arr = data.array();
-        int length = mBuffer.length();
-        //byte arr[] = mBuffer.toString().getBytes();
-        Log.i("dataFromRead",mBuffer.toString());
-        Log.i("dataFromRead", " LEngth " + length);
-        String data2 = "";
-        ByteOrder order = ByteOrder.LITTLE_ENDIAN;
-        if( arr.length > 0) {
-            if (arr[0] != 0 && (arr[21] != 0 || arr[22] != 0)) {
-                short signature = ByteBuffer.wrap(new byte[]{arr[0], arr[1]}).order(order).getShort();
-                short commandCode = arr[2];
-                commandCode &= 0xff;
-                short status = arr[3];
-                status &= 0xff;
-                short battery = arr[4];
-                battery &= 0xff;
-                int lastLoggedRecord = ByteBuffer.wrap(new byte[]{arr[5], arr[6], arr[7], arr[8]}).order(order).getInt();
-                short temperature = ByteBuffer.wrap(new byte[]{arr[9], arr[10]}).order(order).getShort();
-                short humidity = ByteBuffer.wrap(new byte[]{arr[11], arr[12]}).order(order).getShort();
-                short co2 = ByteBuffer.wrap(new byte[]{arr[13], arr[14]}).order(order).getShort();
-                short pm1 = ByteBuffer.wrap(new byte[]{arr[15], arr[16]}).order(order).getShort();
-                short pm25 = ByteBuffer.wrap(new byte[]{arr[17], arr[18]}).order(order).getShort();
-                short pm10 = ByteBuffer.wrap(new byte[]{arr[19], arr[20]}).order(order).getShort();
-                short tvoc = ByteBuffer.wrap(new byte[]{arr[21], arr[22]}).order(order).getShort();
-                Log.i("TESTDATA1123", arr[1] + " " + arr[2]);
-                Log.i("TESTDATAHELP", "Темперура = " + temperature + " Влажность = " + humidity + " co2 = " + co2 + " battery = " + battery + " " + lastLoggedRecord + " " + temperature + " " + humidity + " " + co2
-                        + " " + pm1 + " " + pm25 + " " + pm10 + " " + tvoc);
-                data2 = temperature + " " + humidity + " " + co2 + " " + battery + " " + pm1 + " " + pm25 + " " + pm10 + " " + tvoc;
-                WritableMap params = Arguments.createMap();
-                params.putString("data", data2);
-                sendEvent(DEVICE_READ, params);
-            } else {
-                data2 = "Test";
+    public void syncLoggedRecords(final String id, int fromRecord, ReadableMap options, final Promise promise) {
+        final DeviceSession session = mSessions.get(id);
+        if (session == null || !mBluetoothService.isConnected(id)) {
+            promise.reject(new Exception("Not connected to " + id));
+            return;
+        }
+        RecordSync running = session.getSync();
+        if (running != null && !running.isDone()) {
+            promise.reject(new Exception("Records of " + id + " are already being synced"));
+            return;
+        }
+        if (!options.hasKey("command")) {
+            promise.reject(new Exception("Command code for reading a record is required"));
+            return;
+        }
+
+        int toRecord;
+        if (options.hasKey("toRecord")) {
+            toRecord = options.getInt("toRecord");
+        } else {
+            SensorFrame frame = session.getLastFrame().wrap(mReadFrame);
+            if (!frame.hasData()) {
+                promise.reject(new Exception("Number of last logged record of " + id + " is not known yet"));
+                return;
             }
+            toRecord = frame.getLastLoggedRecord();
         }
+        int command = options.getInt("command");
+        int window = options.hasKey("window") ? options.getInt("window") : 8;
+        final long timeout = options.hasKey("timeout") ? options.getInt("timeout") : 1000;
+        int retries = options.hasKey("retries") ? options.getInt("retries") : 3;
+        final int total = Math.max(0, toRecord - fromRecord + 1);
+
+        final ScheduledFuture<?>[] timer = new ScheduledFuture<?>[1];
+        final RecordSync sync = new RecordSync(command, fromRecord, toRecord, window, timeout, retries, new RecordSync.Listener() {
+            private WritableArray records = Arguments.createArray();
+            private int pending;
+            private int received;
 
-        //mBuffer.append(data);
-        mBuffer = new StringBuffer(String.valueOf(data));
+            @Override
+            public void onRequest(int command, int record) {
+                mBluetoothService.write(id, SensorCommand.encode(command, record), null);
+            }
 
-//        WritableMap params = Arguments.createMap();
-//        params.putString("data", data2);
-//        sendEvent(DEVICE_READ, params);
-        String completeData = readUntil(this.delimiter);
-        if (completeData != null && completeData.length() > 0) {
-            WritableMap params = Arguments.createMap();
-            params.putString("data", completeData);
-            sendEvent(DEVICE_READ, params);
-        }
-    }
+            @Override
+            public void onRecord(SensorFrame frame, long timestamp) {
+                records.pushMap(frameToWritableMap(frame, id, timestamp));
+                received++;
+                if (++pending == SYNC_PROGRESS_RECORDS) {
+                    sendProgress();
+                }
+            }
+
+            @Override
+            public void onComplete(int received, int failed) {
+                if (pending > 0) {
+                    sendProgress();
+                }
+                if (timer[0] != null) {
+                    timer[0].cancel(false);
+                }
+                WritableMap result = Arguments.createMap();
+                result.putString("id", id);
+                result.putInt("received", received);
+                result.putInt("failed", failed);
+                promise.resolve(result);
+            }
 
-    private String readUntil(String delimiter) {
-        String data = "";
-        int index = mBuffer.indexOf(delimiter, 0);
-        if (index > -1) {
-            data = mBuffer.substring(0, index + delimiter.length());
-            mBuffer.delete(0, index + delimiter.length());
+            private void sendProgress() {
+                WritableMap params = Arguments.createMap();
+                params.putString("id", id);
+                params.putInt("received", received);
+                params.putInt("total", total);
+                params.putArray("records", records);
+                sendEvent(SYNC_PROGRESS, params);
+                records = Arguments.createArray();
+                pending = 0;
+            }
+        });
+
+        session.setSync(sync);
+        synchronized (sync) {
+            sync.start(SystemClock.elapsedRealtime());
+            if (!sync.isDone()) {
+                timer[0] = mScheduler.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        sync.checkTimeouts(SystemClock.elapsedRealtime());
+                    }
+                }, timeout / 4 + 1, timeout / 4 + 1, TimeUnit.MILLISECONDS);
+            }
         }
-        return data;
     }
 
-    /*********************/
-    /** Private methods **/
-    /*********************/
-
+    @ReactMethod
     /**
-     * Check if is api level 19 or above
-     * @return is above api level 19
+     * Send command to device and resolve with its response frame, several
+     * commands can be in flight and are matched by command code
      */
-    private boolean isKitKatOrAbove () {
-        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+    public void sendCommand(final String id, int command, ReadableMap options, final Promise promise) {
+        if (!mBluetoothService.isConnected(id)) {
+            promise.reject(new Exception("Not connected to " + id));
+            return;
+        }
+        int argument = options.hasKey("argument") ? options.getInt("argument") : 0;
+        long timeout = options.hasKey("timeout") ? options.getInt("timeout") : 1000;
+        int retries = options.hasKey("retries") ? options.getInt("retries") : 0;
+        // Tell responses from frames the sensor sends on its own
+        int status = options.hasKey("status") ? options.getInt("status") : CommandRequests.ANY_STATUS;
+        boolean echo = options.hasKey("echo") && options.getBoolean("echo");
+
+        boolean submitted = getSession(id).getRequests().submit(command, argument, status, echo, timeout, retries, new CommandRequests.Callback() {
+            @Override
+            public void onResponse(SensorFrame frame, long timestamp) {
+                promise.resolve(frameToWritableMap(frame, id, timestamp));
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                promise.reject(e);
+            }
+        }, SystemClock.elapsedRealtime());
+        if (!submitted) {
+            promise.reject(new Exception("Too many commands waiting for a response from " + id));
+        }
     }
 
+    @ReactMethod
     /**
-     * Send event to javascript
-     * @param eventName Name of the event
-     * @param params Additional params
+     * Set command which polling sends to request a frame
      */
-    private void sendEvent(String eventName, @Nullable WritableMap params) {
-        if (mReactContext.hasActiveCatalystInstance()) {
-            if (D) Log.d(TAG, "Sending event: " + eventName);
-            mReactContext
-                .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
-                .emit(eventName, params);
-        }
+    public void setPollingCommand(int command, int argument, Promise promise) {
+        mPollCommand = SensorCommand.encode(command, argument);
+        promise.resolve(true);
     }
 
+    @ReactMethod
     /**
-     * Convert BluetoothDevice into WritableMap
-     * @param device Bluetooth device
+     * Send the polling command to every connected device every interval ms,
+     * responses are handled as normal reads
      */
-    private WritableMap deviceToWritableMap(BluetoothDevice device) {
-        if (D) Log.d(TAG, "device" + device.toString());
-
-        WritableMap params = Arguments.createMap();
-
-        params.putString("name", device.getName());
-        params.putString("address", device.getAddress());
-        params.putString("id", device.getAddress());
-
-        if (device.getBluetoothClass() != null) {
-            params.putInt("class", device.getBluetoothClass().getDeviceClass());
+    public void startPolling(int interval, Promise promise) {
+        if (mPollCommand == null) {
+            promise.reject(new Exception("Polling command is not set"));
+            return;
         }
-
-        return params;
+        if (interval <= 0) {
+            promise.reject(new Exception("Polling interval must be positive"));
+            return;
+        }
+        mPollInterval = interval;
+        for (String address : mBluetoothService.getConnectedAddresses()) {
+            startPollingDevice(address);
+        }
+        promise.resolve(true);
     }
 
+    @ReactMethod
     /**
-     * Pair device before kitkat
-     * @param device Device
+     * Let polling speed up while the watched channels change fast and slow
+     * down while they are stable, within minInterval and maxInterval
+     */
+    public void setAdaptivePolling(ReadableMap options, Promise promise) {
+        if (options.hasKey("enabled") && !options.getBoolean("enabled")) {
+            mAdaptiveSampling = null;
+            long interval = mPollInterval;
+            for (DeviceSession session : mSessions.values()) {
+                if (interval > 0 && session.getPoller().isRunning()) {
+                    session.getPoller().setInterval(interval);
+                }
+            }
+            promise.resolve(true);
+            return;
+        }
+
+        long minInterval = options.hasKey("minInterval") ? options.getInt("minInterval") : 1000;
+        long maxInterval = options.hasKey("maxInterval") ? options.getInt("maxInterval") : 60000;
+
+        // Change per second of each watched channel above which polling speeds up
+        int[] channels = ADAPTIVE_CHANNELS;
+        double[] thresholds = ADAPTIVE_THRESHOLDS;
+        if (options.hasKey("thresholds")) {
+            ReadableMap map = options.getMap("thresholds");
+            int count = 0;
+            channels = new int[SensorFrame.CHANNEL_COUNT];
+            thresholds = new double[SensorFrame.CHANNEL_COUNT];
+            for (int channel = 0; channel < SensorFrame.CHANNEL_COUNT; channel++) {
+                if (map.hasKey(SensorFrame.CHANNEL_NAMES[channel])) {
+                    channels[count] = channel;
+                    thresholds[count] = map.getDouble(SensorFrame.CHANNEL_NAMES[channel]);
+                    count++;
+                }
+            }
+            if (count == 0) {
+                promise.reject(new Exception("No channel to watch"));
+                return;
+            }
+            channels = Arrays.copyOf(channels, count);
+            thresholds = Arrays.copyOf(thresholds, count);
+        }
+
+        mAdaptiveSampling = new AdaptiveSampling(channels, thresholds, minInterval, maxInterval);
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    /**
+     * Only send read events when a channel moved out of its band around the
+     * value last sent, or when nothing was sent for maxSilence ms
+     */
+    public void setDeadband(ReadableMap options, Promise promise) {
+        if (options.hasKey("enabled") && !options.getBoolean("enabled")) {
+            mDeadband = null;
+            promise.resolve(true);
+            return;
+        }
+        if (!options.hasKey("bands")) {
+            promise.reject(new Exception("Bands are not set"));
+            return;
+        }
+
+        // Band of each channel in raw units, channels left out do not trigger events
+        ReadableMap map = options.getMap("bands");
+        int[] bands = new int[SensorFrame.CHANNEL_COUNT];
+        boolean any = false;
+        for (int channel = 0; channel < SensorFrame.CHANNEL_COUNT; channel++) {
+            bands[channel] = DeadbandFilter.NO_BAND;
+            if (map.hasKey(SensorFrame.CHANNEL_NAMES[channel])) {
+                bands[channel] = Math.max(0, map.getInt(SensorFrame.CHANNEL_NAMES[channel]));
+                any = true;
+            }
+        }
+        if (!any) {
+            promise.reject(new Exception("No channel to filter"));
+            return;
+        }
+        long maxSilence = options.hasKey("maxSilence") ? Math.max(0, options.getInt("maxSilence")) : 60000;
+
+        mDeadband = new DeadbandFilter(bands, maxSilence);
+        // Start over, so the next reading of every device is sent
+        for (DeviceSession session : mSessions.values()) {
+            session.getDeadbandState().reset();
+        }
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    /**
+     * Stop polling devices
+     */
+    public void stopPolling(Promise promise) {
+        mPollInterval = 0;
+        for (DeviceSession session : mSessions.values()) {
+            session.getPoller().stop();
+        }
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    /**
+     * Stop download of logged records of device
+     */
+    public void cancelSync(String id, Promise promise) {
+        DeviceSession session = mSessions.get(id);
+        RecordSync sync = session != null ? session.getSync() : null;
+        if (sync != null) {
+            sync.cancel();
+        }
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    public void readUntilDelimiter(String delimiter, Promise promise) {
+        DeviceSession session = mCurrentSession;
+        if (session == null) {
+            promise.resolve("");
+            return;
+        }
+        DelimiterBuffer buffer = session.getBuffer();
+        synchronized (buffer) {
+            promise.resolve(buffer.readUntil(DelimiterBuffer.toBytes(delimiter)));
+        }
+    }
+
+
+    /***********/
+    /** Other **/
+
+    @ReactMethod
+    /**
+     * Clear data in buffer
+     */
+    public void clear(Promise promise) {
+        DeviceSession session = mCurrentSession;
+        if (session != null) {
+            DelimiterBuffer buffer = session.getBuffer();
+            synchronized (buffer) {
+                buffer.clear();
+            }
+        }
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    /**
+     * Get length of data available to read
+     */
+    public void available(Promise promise) {
+        DeviceSession session = mCurrentSession;
+        if (session == null) {
+            promise.resolve(0);
+            return;
+        }
+        DelimiterBuffer buffer = session.getBuffer();
+        synchronized (buffer) {
+            promise.resolve(buffer.length());
+        }
+    }
+
+
+    @ReactMethod
+    /**
+     * Get counters and latencies of connecting, decoding and emitting events
+     */
+    public void getStats(Promise promise) {
+        promise.resolve(statsToWritableMap());
+    }
+
+    @ReactMethod
+    /**
+     * Start counters and latencies over
+     */
+    public void resetStats(Promise promise) {
+        mStats.reset();
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    /**
+     * Send stats event every interval ms, 0 to stop sending
+     */
+    public synchronized void setStatsInterval(int interval, Promise promise) {
+        if (mStatsFuture != null) {
+            mStatsFuture.cancel(false);
+            mStatsFuture = null;
+        }
+        if (interval > 0) {
+            try {
+                mStatsFuture = mScheduler.scheduleAtFixedRate(new Runnable() {
+                    @Override
+                    public void run() {
+                        sendEvent(STATS, statsToWritableMap());
+                    }
+                }, interval, interval, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                promise.reject(e);
+                return;
+            }
+        }
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    /**
+     * Configure trace of the data path with level (off, error, warn, info,
+     * debug or verbose), sampling of verbose events and dumpOnError
+     */
+    public void configureTrace(ReadableMap options, Promise promise) {
+        if (options.hasKey("level")) {
+            try {
+                mTrace.setLevel(TraceRecorder.Level.valueOf(options.getString("level").toUpperCase(Locale.US)));
+            } catch (IllegalArgumentException e) {
+                promise.reject(new Exception("Unknown trace level " + options.getString("level")));
+                return;
+            }
+        }
+        if (options.hasKey("sampling")) {
+            mTrace.setSampling(options.getInt("sampling"));
+        }
+        if (options.hasKey("dumpOnError")) {
+            mTraceDumpOnError = options.getBoolean("dumpOnError");
+        }
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    /**
+     * Write trace of the data path to a text file in the cache directory
+     */
+    public void dumpTrace(final Promise promise) {
+        try {
+            mIoExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        File file = writeTrace();
+                        WritableMap result = Arguments.createMap();
+                        result.putString("path", file.getAbsolutePath());
+                        result.putDouble("size", file.length());
+                        promise.resolve(result);
+                    } catch (IOException e) {
+                        promise.reject(e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            promise.reject(e);
+        }
+    }
+
+    @ReactMethod
+    /**
+     * Set bluetooth adapter name
+     */
+    public void setAdapterName(String newName, Promise promise) {
+        if (mBluetoothAdapter != null) {
+            mBluetoothAdapter.setName(newName);
+        }
+        promise.resolve(true);
+    }
+
+    /****************************************/
+    /** Methods available to whole package **/
+    /****************************************/
+
+    /**
+     * Handle connection success
+     * @param address Address of device
+     * @param msg Additional message
+     */
+    void onConnectionSuccess(String address, String msg) {
+        getSession(address).getDeadbandState().reset();
+        startPollingDevice(address);
+        WritableMap params = Arguments.createMap();
+        params.putString("message", msg);
+        params.putString("id", address);
+        sendEvent(CONN_SUCCESS, params);
+        Promise promise = getSession(address).takeConnectPromise();
+        if (promise != null) {
+            WritableMap result = Arguments.createMap();
+            result.putString("message", msg);
+            result.putString("id", address);
+            promise.resolve(result);
+        }
+    }
+
+    /**
+     * handle connection failure
+     * @param address Address of device
+     * @param msg Additional message
+     */
+    void onConnectionFailed(String address, String msg) {
+        WritableMap params = Arguments.createMap();
+        params.putString("message", msg);
+        params.putString("id", address);
+        sendEvent(CONN_FAILED, params);
+        Promise promise = getSession(address).takeConnectPromise();
+        if (promise != null) {
+            promise.reject(new Exception(msg));
+        }
+    }
+
+    /**
+     * Handle scheduled attempt to restore a lost connection
+     * @param address Address of device
+     * @param attempt Number of the attempt
+     * @param delay Time in ms until the attempt
+     */
+    void onReconnecting(String address, int attempt, long delay) {
+        mTrace.record(TraceRecorder.Event.RECONNECTING, address, attempt, delay);
+        DeviceSession session = getSession(address);
+        session.getPoller().stop();
+        // The restored connection starts new windows
+        session.getAggregator().flush();
+
+        WritableMap params = Arguments.createMap();
+        params.putString("id", address);
+        params.putInt("attempt", attempt);
+        params.putDouble("delay", delay);
+        sendEvent(RECONNECTING, params);
+    }
+
+    /**
+     * Handle connection restored after connection loss
+     * @param address Address of device
+     * @param attempt Number of the attempt which succeeded
+     */
+    void onReconnected(String address, int attempt) {
+        mTrace.record(TraceRecorder.Event.RECONNECTED, address, attempt, 0);
+        getSession(address).getDeadbandState().reset();
+        startPollingDevice(address);
+
+        WritableMap params = Arguments.createMap();
+        params.putString("id", address);
+        params.putInt("attempt", attempt);
+        sendEvent(RECONNECTED, params);
+    }
+
+    /**
+     * Handle lost connection
+     * @param address Address of device
+     * @param msg Message
+     */
+    void onConnectionLost (String address, String msg) {
+        DeviceSession session = getSession(address);
+        RecordSync sync = session.getSync();
+        if (sync != null) {
+            sync.cancel();
+        }
+        session.getRequests().cancel(new Exception(msg));
+        session.getPoller().stop();
+        session.getAggregator().flush();
+        WritableMap params = Arguments.createMap();
+        params.putString("message", msg);
+        params.putString("id", address);
+        sendEvent(CONN_LOST, params);
+    }
+
+    /**
+     * Handle error
+     * @param e Exception
+     */
+    void onError (Exception e) {
+        mTrace.record(TraceRecorder.Event.ERROR, e.getClass().getName());
+        if (mTraceDumpOnError) {
+            dumpTraceToFile();
+        }
+        WritableMap params = Arguments.createMap();
+        params.putString("message", e.getMessage());
+        sendEvent(ERROR, params);
+    }
+
+    /**
+     * Handle bytes read from device, before they are decoded into frames.
+     * Bytes are only buffered while a delimiter is set.
+     * @param address Address of device
+     * @param data Buffer holding the bytes
+     * @param length Number of bytes
+     */
+    void onBytes (String address, byte[] data, int length) {
+        byte[] delimiter = this.delimiter;
+        if (delimiter.length == 0) return;
+
+        DelimiterBuffer buffer = getSession(address).getBuffer();
+        synchronized (buffer) {
+            buffer.append(data, 0, length);
+            String completeData;
+            while ((completeData = buffer.next(delimiter)) != null) {
+                emitRead(completeData, address);
+            }
+        }
+    }
+
+    /**
+     * Handle read
+     * @param data Message
+     * @param address Address of device
+     */
+    void onData (ByteBuffer  data, String address) {
+        long start = System.nanoTime();
+        try {
+            handleFrame(data, address);
+        } finally {
+            mStats.frame.recordSince(start);
+        }
+    }
+
+    /**
+     * Store, aggregate and emit decoded frame
+     * @param data Frame
+     * @param address Address of device
+     */
+    private void handleFrame(ByteBuffer data, String address) {
+        DeviceSession session = getSession(address);
+        long timestamp = System.currentTimeMillis();
+        SensorFrame frame = session.getFrame().wrap(data.array(), data.arrayOffset());
+
+        // Responses to record requests do not belong to the live stream
+        RecordSync sync = session.getSync();
+        if (sync != null && sync.onFrame(frame, timestamp, SystemClock.elapsedRealtime())) {
+            return;
+        }
+
+        mTrace.record(TraceRecorder.Event.FRAME, address, frame.getCommandCode(), frame.getLastLoggedRecord() & 0xffffffffL);
+        // Responses to commands also go on to the live stream
+        session.getRequests().onFrame(frame, timestamp, SystemClock.elapsedRealtime());
+        session.setLastFrame(FrameSnapshot.of(data.array(), data.arrayOffset(), timestamp));
+        if (frame.hasData()) {
+            session.getHistory().add(frame, timestamp);
+            ReadingStore store = session.getStore();
+            if (store != null) {
+                try {
+                    store.append(frame, timestamp);
+                } catch (IOException e) {
+                    Log.e(TAG, "Can not store reading of " + address, e);
+                }
+            }
+            session.getAggregator().add(frame, timestamp);
+            adaptPolling(session, frame, timestamp);
+        }
+        if (!readEvents) {
+            return;
+        }
+        // Readings are kept above in full, only their events are filtered
+        DeadbandFilter deadband = mDeadband;
+        if (deadband != null && frame.hasData() && !deadband.accept(session.getDeadbandState(), frame, timestamp)) {
+            mStats.eventsFiltered.incrementAndGet();
+            return;
+        }
+        if (!frame.hasData()) {
+            return;
+        }
+        WritableMap entry = structuredData
+                ? frameToWritableMap(frame, address, timestamp)
+                : textToWritableMap(EventFormat.toText(frame), address);
+        PollTimer poller = session.getPoller();
+        if (poller.isRunning()) {
+            entry.putDouble("interval", poller.getInterval());
+        }
+        emitRead(entry);
+    }
+
+    /**
+     * Send structured read data to javascript, directly or through the batcher
+     * @param entry Decoded frame
+     */
+    private void emitRead(WritableMap entry) {
+        if (mReadBatcher.isEnabled()) {
+            mReadBatcher.add(entry);
+        } else {
+            sendEvent(DEVICE_READ, entry);
+        }
+    }
+
+    /**
+     * Send string read data to javascript, directly or through the batcher
+     * @param data Message
+     * @param address Address of device which sent the data
+     */
+    private void emitRead(String data, String address) {
+        emitRead(textToWritableMap(data, address));
+    }
+
+    /**
+     * Convert string read data into WritableMap
+     * @param data Message
+     * @param address Address of device which sent the data
+     */
+    private WritableMap textToWritableMap(String data, String address) {
+        WritableMap params = Arguments.createMap();
+        params.putString("data", data);
+        params.putString("id", address);
+        return params;
+    }
+
+    /*********************/
+    /** Private methods **/
+    /*********************/
+
+    /**
+     * Get state kept for device, created on first use
+     * @param address Address of device
+     */
+    private DeviceSession getSession(String address) {
+        DeviceSession session = mSessions.get(address);
+        if (session == null) {
+            final String id = address;
+            session = new DeviceSession(address, getStoreDirectory(address), mIoExecutor, new ReadingAggregator.Listener() {
+                @Override
+                public void onWindowClosed(ReadingAggregator.Window window) {
+                    if (aggregateEvents) {
+                        sendEvent(AGGREGATE, windowToWritableMap(id, window));
+                    }
+                }
+            }, new CommandRequests.Sender() {
+                @Override
+                public void send(int command, int argument, long timeout) {
+                    mBluetoothService.write(id, SensorCommand.encode(command, argument), null);
+                    scheduleCommandTimeouts(id, timeout);
+                }
+            }, new PollTimer(mScheduler, new PollTimer.Listener() {
+                @Override
+                public void onPoll() {
+                    byte[] command = mPollCommand;
+                    if (command != null) {
+                        mBluetoothService.write(id, command, null);
+                    }
+                }
+            }));
+            DeviceSession existing = mSessions.putIfAbsent(address, session);
+            if (existing != null) {
+                session = existing;
+            }
+        }
+        return session;
+    }
+
+    /**
+     * Get state kept for device which has stored readings, without creating
+     * a store for devices never connected to
+     * @param address Address of device
+     * @return Session or null if nothing was stored for device
+     */
+    private DeviceSession getStoredSession(String address) {
+        if (address.indexOf(File.separatorChar) >= 0 || address.startsWith(".")
+                || !getStoreDirectory(address).isDirectory()) {
+            return null;
+        }
+        return getSession(address);
+    }
+
+    /**
+     * @param address Address of device
+     * @return Directory of the persistent store of readings of device
+     */
+    private File getStoreDirectory(String address) {
+        return new File(mStoreRoot, address.replace(':', '_'));
+    }
+
+    /**
+     * Start polling newly connected device if polling is enabled
+     * @param address Address of device
+     */
+    private void startPollingDevice(String address) {
+        long interval = mPollInterval;
+        if (interval > 0) {
+            DeviceSession session = getSession(address);
+            session.getSamplingState().reset();
+            AdaptiveSampling adaptive = mAdaptiveSampling;
+            session.getPoller().start(adaptive != null ? adaptive.clamp(interval) : interval);
+        }
+    }
+
+    /**
+     * Adapt polling interval of device to how fast its readings change
+     * @param session Device session
+     * @param frame Frame with data
+     * @param timestamp Time the frame was received
+     */
+    private void adaptPolling(DeviceSession session, SensorFrame frame, long timestamp) {
+        AdaptiveSampling adaptive = mAdaptiveSampling;
+        PollTimer poller = session.getPoller();
+        if (adaptive == null || !poller.isRunning()) return;
+
+        long interval = poller.getInterval();
+        long next = adaptive.next(session.getSamplingState(), frame, timestamp, interval);
+        if (next != interval) {
+            poller.setInterval(next);
+        }
+    }
+
+    /**
+     * Check timeouts of commands sent to device once timeout passed
+     * @param address Address of device
+     * @param timeout Time in ms
+     */
+    private void scheduleCommandTimeouts(final String address, long timeout) {
+        try {
+            mScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    getSession(address).getRequests().checkTimeouts(SystemClock.elapsedRealtime());
+                }
+            }, timeout + 1, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shut down, commands fail with the connection
+        }
+    }
+
+    /**
+     * Resolve promise with the last frame received from device
+     * @param session Device session, may be null
+     * @param promise Promise
+     */
+    private void readFrame(@Nullable DeviceSession session, Promise promise) {
+        boolean hasData = false;
+        SensorFrame frame = null;
+        FrameSnapshot lastFrame = null;
+        if (session != null) {
+            lastFrame = session.getLastFrame();
+            frame = lastFrame.wrap(mReadFrame);
+            hasData = frame.hasData();
+        }
+
+        if (structuredData) {
+            promise.resolve(hasData ? frameToWritableMap(frame, session.getAddress(), lastFrame.getTimestamp()) : null);
+            return;
+        }
+
+        String data;
+        if (hasData) {
+            short battery = frame.getBattery();
+            int lastLoggedRecord = frame.getLastLoggedRecord();
+            short temperature = frame.getTemperature();
+            short humidity = frame.getHumidity();
+            short co2 = frame.getCo2();
+            short pm1 = frame.getPm1();
+            short pm25 = frame.getPm25();
+            short pm10 = frame.getPm10();
+            short tvoc = frame.getTvoc();
+            data = temperature + " " + humidity + " " + co2 + " " + battery + " " + lastLoggedRecord + " " + temperature + " " + humidity + " " + co2
+                    + " " + pm1 + " " + pm25 + " " + pm10 + " " + tvoc;
+        } else {
+            data = "Test";
+        }
+
+        promise.resolve(data);
+    }
+
+    /**
+     * Dump trace after an error, at most once per TRACE_DUMP_INTERVAL and
+     * on the I/O executor
+     */
+    private void dumpTraceToFile() {
+        if (mTrace.getLevel() == TraceRecorder.Level.OFF) return;
+        long now = SystemClock.elapsedRealtime();
+        long last = mLastTraceDump.get();
+        if (last != 0 && now - last < TRACE_DUMP_INTERVAL) return;
+        if (!mLastTraceDump.compareAndSet(last, now)) return;
+
+        try {
+            mIoExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        File file = writeTrace();
+                        Log.e(TAG, "Trace written to " + file);
+                    } catch (IOException e) {
+                        Log.e(TAG, "Can not write trace", e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shut down
+        }
+    }
+
+    /**
+     * Write trace to a new file in the cache directory, keeping the newest
+     * TRACE_DUMP_FILES of them
+     * @return File
+     */
+    private File writeTrace() throws IOException {
+        File directory = new File(mReactContext.getCacheDir(), "traces");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can not create " + directory);
+        }
+
+        File file = new File(directory, "trace-" + System.currentTimeMillis() + ".txt");
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            mTrace.dump(writer);
+        } finally {
+            writer.close();
+        }
+
+        File[] files = directory.listFiles();
+        if (files != null && files.length > TRACE_DUMP_FILES) {
+            Arrays.sort(files);
+            for (int i = 0; i < files.length - TRACE_DUMP_FILES; i++) {
+                if (!files[i].delete()) {
+                    Log.e(TAG, "Can not delete " + files[i]);
+                }
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Check if is api level 19 or above
+     * @return is above api level 19
+     */
+    private boolean isKitKatOrAbove () {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+    }
+
+    /**
+     * Send event to javascript
+     * @param eventName Name of the event
+     * @param params Additional params
+     */
+    private void sendEvent(String eventName, @Nullable WritableMap params) {
+        if (mReactContext.hasActiveCatalystInstance()) {
+            mTrace.record(TraceRecorder.Event.EVENT, eventName);
+            long start = System.nanoTime();
+            mReactContext
+                .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                .emit(eventName, params);
+            mStats.emit.recordSince(start);
+            mStats.eventsSent.incrementAndGet();
+        } else {
+            mStats.eventsDropped.incrementAndGet();
+            mTrace.record(TraceRecorder.Event.EVENT_DROPPED, eventName);
+        }
+    }
+
+    /**
+     * Convert discovered device into WritableMap
+     * @param discovered Discovered device
+     */
+    private WritableMap discoveredDeviceToWritableMap(DiscoveredDevice discovered) {
+        WritableMap params = deviceToWritableMap(discovered.device);
+        params.putString("name", discovered.name);
+        if (discovered.rssi != Short.MIN_VALUE) {
+            params.putInt("rssi", discovered.rssi);
+        }
+        return params;
+    }
+
+    /**
+     * Convert all discovered devices into WritableArray
+     */
+    private WritableArray discoveredDevicesToWritableArray() {
+        WritableArray devices = Arguments.createArray();
+        for (DiscoveredDevice discovered : mDiscoveredDevices.values()) {
+            devices.pushMap(discoveredDeviceToWritableMap(discovered));
+        }
+        return devices;
+    }
+
+    /**
+     * Convert BluetoothDevice into WritableMap
+     * @param device Bluetooth device
+     */
+    private WritableMap deviceToWritableMap(BluetoothDevice device) {
+        WritableMap params = Arguments.createMap();
+        int deviceClass = device.getBluetoothClass() != null
+                ? device.getBluetoothClass().getDeviceClass() : EventFormat.NO_DEVICE_CLASS;
+        EventFormat.putDevice(device.getName(), device.getAddress(), deviceClass, new MapFields(params));
+        return params;
+    }
+
+    /**
+     * Convert decoded frame into WritableMap with numeric fields
+     * @param frame Decoded frame
+     * @param address Address of device which sent the frame
+     * @param timestamp Time the frame was received
+     */
+    private WritableMap frameToWritableMap(SensorFrame frame, String address, long timestamp) {
+        WritableMap params = Arguments.createMap();
+        EventFormat.putFrame(frame, address, timestamp, DATA_SCHEMA_VERSION, new MapFields(params));
+        return params;
+    }
+
+    /**
+     * Convert reading kept in history into WritableMap, caller has to hold history lock
+     * @param address Address of device
+     * @param history History of device
+     * @param age Age of reading, 0 is the newest
+     */
+    private WritableMap readingToWritableMap(String address, ReadingHistory history, int age) {
+        WritableMap params = Arguments.createMap();
+
+        params.putInt("schema", DATA_SCHEMA_VERSION);
+        params.putString("id", address);
+        params.putDouble("timestamp", history.getTimestamp(age));
+        params.putDouble("lastLoggedRecord", history.getLastLoggedRecord(age) & 0xffffffffL);
+        for (int channel = 0; channel < SensorFrame.CHANNEL_COUNT; channel++) {
+            params.putInt(SensorFrame.CHANNEL_NAMES[channel], history.getChannel(channel, age));
+        }
+
+        return params;
+    }
+
+    /**
+     * Convert reading read from the persistent store into WritableMap
+     * @param address Address of device
+     * @param reading Stored reading
+     */
+    private WritableMap storedReadingToWritableMap(String address, StoredReading reading) {
+        WritableMap params = Arguments.createMap();
+
+        params.putInt("schema", DATA_SCHEMA_VERSION);
+        params.putString("id", address);
+        params.putDouble("timestamp", reading.getTimestamp());
+        params.putDouble("lastLoggedRecord", reading.getLastLoggedRecord() & 0xffffffffL);
+        for (int channel = 0; channel < SensorFrame.CHANNEL_COUNT; channel++) {
+            params.putInt(SensorFrame.CHANNEL_NAMES[channel], reading.getChannel(channel));
+        }
+
+        return params;
+    }
+
+    /**
+     * Convert closed aggregate window into WritableMap
+     * @param address Address of device
+     * @param window Aggregate window
+     */
+    private WritableMap windowToWritableMap(String address, ReadingAggregator.Window window) {
+        WritableMap params = Arguments.createMap();
+
+        params.putInt("schema", DATA_SCHEMA_VERSION);
+        params.putString("id", address);
+        params.putDouble("window", window.getLength());
+        params.putDouble("start", window.getStart());
+        params.putDouble("end", window.getStart() + window.getLength());
+        params.putInt("count", window.getCount());
+        for (int channel = 0; channel < ReadingAggregator.CHANNEL_COUNT; channel++) {
+            WritableMap aggregate = Arguments.createMap();
+            aggregate.putInt("min", window.getMin(channel));
+            aggregate.putInt("max", window.getMax(channel));
+            aggregate.putDouble("mean", window.getMean(channel));
+            params.putMap(SensorFrame.CHANNEL_NAMES[channel], aggregate);
+        }
+
+        return params;
+    }
+
+    /**
+     * Convert pipeline counters and latencies into WritableMap
+     */
+    private WritableMap statsToWritableMap() {
+        WritableMap params = Arguments.createMap();
+
+        params.putDouble("since", mStats.getStart());
+        params.putDouble("timestamp", System.currentTimeMillis());
+        params.putDouble("connectAttempts", mStats.connectAttempts.get());
+        params.putDouble("connectFailures", mStats.connectFailures.get());
+        params.putDouble("connectTimeouts", mStats.connectTimeouts.get());
+        params.putDouble("connectionsLost", mStats.connectionsLost.get());
+        params.putDouble("reconnects", mStats.reconnects.get());
+        params.putDouble("bytesRead", mStats.bytesRead.get());
+        params.putDouble("framesDecoded", mStats.framesDecoded.get());
+        params.putDouble("framesRejected", mStats.framesRejected.get());
+        params.putDouble("bytesSkipped", mStats.bytesSkipped.get());
+        params.putDouble("bytesWritten", mStats.bytesWritten.get());
+        params.putDouble("writesFailed", mStats.writesFailed.get());
+        params.putDouble("eventsSent", mStats.eventsSent.get());
+        params.putDouble("eventsDropped", mStats.eventsDropped.get());
+        params.putDouble("eventsFiltered", mStats.eventsFiltered.get());
+
+        WritableMap latency = Arguments.createMap();
+        latency.putMap("connect", histogramToWritableMap(mStats.connect));
+        latency.putMap("decode", histogramToWritableMap(mStats.decode));
+        latency.putMap("frame", histogramToWritableMap(mStats.frame));
+        latency.putMap("emit", histogramToWritableMap(mStats.emit));
+        params.putMap("latency", latency);
+
+        return params;
+    }
+
+    /**
+     * Convert histogram into WritableMap, latencies in ms
+     * @param histogram Histogram
+     */
+    private WritableMap histogramToWritableMap(PipelineStats.Histogram histogram) {
+        WritableMap params = Arguments.createMap();
+        long count = histogram.getCount();
+
+        params.putDouble("count", count);
+        params.putDouble("mean", count > 0 ? histogram.getSum() / 1000.0 / count : 0);
+        params.putDouble("max", histogram.getMax() / 1000.0);
+        params.putDouble("p50", histogram.getPercentile(50) / 1000.0);
+        params.putDouble("p90", histogram.getPercentile(90) / 1000.0);
+        params.putDouble("p99", histogram.getPercentile(99) / 1000.0);
+
+        // Counts of the buckets, each up to and including its bound, the last one without bound
+        WritableArray bounds = Arguments.createArray();
+        WritableArray buckets = Arguments.createArray();
+        for (int i = 0; i <= PipelineStats.Histogram.BOUNDS.length; i++) {
+            if (i < PipelineStats.Histogram.BOUNDS.length) {
+                bounds.pushDouble(PipelineStats.Histogram.BOUNDS[i] / 1000.0);
+            }
+            buckets.pushDouble(histogram.getBucket(i));
+        }
+        params.putArray("bounds", bounds);
+        params.putArray("buckets", buckets);
+
+        return params;
+    }
+
+    /**
+     * Convert newest readings kept in history into WritableArray, oldest first,
+     * caller has to hold history lock
+     * @param address Address of device
+     * @param history History of device
+     * @param count Number of readings
+     */
+    private WritableArray historyToWritableArray(String address, ReadingHistory history, int count) {
+        WritableArray readings = Arguments.createArray();
+        for (int age = count - 1; age >= 0; age--) {
+            readings.pushMap(readingToWritableMap(address, history, age));
+        }
+        return readings;
+    }
+
+    /**
+     * Pair device before kitkat
+     * @param device Device
      */
     private void pairDevice(BluetoothDevice device) {
         try {
@@ -706,44 +2004,108 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule impleme
     }
 
     /**
-     * Register receiver for bluetooth device discovery
+     * Start discovery unless it is running, the receiver is only registered once
      */
-    private void registerBluetoothDeviceDiscoveryReceiver() {
+    private synchronized void startDeviceDiscovery() {
+        if (mDiscoveryReceiver != null) return;
+
         IntentFilter intentFilter = new IntentFilter();
 
         intentFilter.addAction(BluetoothDevice.ACTION_FOUND);
         intentFilter.addAction(BluetoothAdapter.ACTION_DISCOVERY_FINISHED);
 
-        final BroadcastReceiver deviceDiscoveryReceiver = new BroadcastReceiver() {
-            private WritableArray unpairedDevices = Arguments.createArray();
+        mDiscoveryReceiver = new BroadcastReceiver() {
             public void onReceive(Context context, Intent intent) {
                 String action = intent.getAction();
                 if (D) Log.d(TAG, "onReceive called");
 
                 if (BluetoothDevice.ACTION_FOUND.equals(action)) {
                     BluetoothDevice device = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
-                    WritableMap d = deviceToWritableMap(device);
-                    unpairedDevices.pushMap(d);
+                    String name = intent.getStringExtra(BluetoothDevice.EXTRA_NAME);
+                    short rssi = intent.getShortExtra(BluetoothDevice.EXTRA_RSSI, Short.MIN_VALUE);
+                    onDeviceFound(device, name != null ? name : device.getName(), rssi);
                 } else if (BluetoothAdapter.ACTION_DISCOVERY_FINISHED.equals(action)) {
                     if (D) Log.d(TAG, "Discovery finished");
-                    if (mDeviceDiscoveryPromise != null) {
-                        mDeviceDiscoveryPromise.resolve(unpairedDevices);
-                        mDeviceDiscoveryPromise = null;
-                    }
-
-                    try {
-                        mReactContext.unregisterReceiver(this);
-                    } catch (Exception e) {
-                        Log.e(TAG, "Unable to unregister receiver", e);
-                        onError(e);
-                    }
+                    onDiscoveryFinished(this);
                 }
             }
         };
 
-        mReactContext.registerReceiver(deviceDiscoveryReceiver, intentFilter);
+        mDiscoveredDevices.clear();
+        mReactContext.registerReceiver(mDiscoveryReceiver, intentFilter);
+        if (!mBluetoothAdapter.startDiscovery()) {
+            onDiscoveryFinished(mDiscoveryReceiver);
+        }
+    }
+
+    /**
+     * Handle device found by discovery, every device is reported once or
+     * again when its name becomes known
+     * @param device Device
+     * @param name Name of device, null if not known yet
+     * @param rssi Signal strength in dBm
+     */
+    private synchronized void onDeviceFound(BluetoothDevice device, @Nullable String name, short rssi) {
+        DiscoveredDevice discovered = mDiscoveredDevices.get(device.getAddress());
+        if (discovered != null) {
+            discovered.rssi = rssi;
+            if (discovered.name != null || name == null) return;
+            discovered.name = name;
+        } else {
+            discovered = new DiscoveredDevice(device, name, rssi);
+            mDiscoveredDevices.put(device.getAddress(), discovered);
+        }
+
+        sendEvent(DEVICE_FOUND, discoveredDeviceToWritableMap(discovered));
+        matchDevice(discovered);
+    }
+
+    /**
+     * Resolve the pending discovery with a filter if device matches it and stop discovery
+     * @param device Discovered device
+     * @return Whether the device matched
+     */
+    private synchronized boolean matchDevice(DiscoveredDevice device) {
+        if (mDeviceMatchPromise == null || (mMatchName == null && mMatchAddress == null)) return false;
+        if (mMatchAddress != null && !mMatchAddress.equals(device.device.getAddress().toUpperCase())) return false;
+        if (mMatchName != null && (device.name == null || !device.name.toLowerCase().contains(mMatchName))) return false;
+
+        mDeviceMatchPromise.resolve(discoveredDeviceToWritableMap(device));
+        mDeviceMatchPromise = null;
+        mBluetoothAdapter.cancelDiscovery();
+        return true;
+    }
+
+    /**
+     * Resolve pending discoveries and unregister the receiver
+     * @param receiver Receiver of the discovery which finished
+     */
+    private synchronized void onDiscoveryFinished(BroadcastReceiver receiver) {
+        if (mDiscoveryReceiver != receiver) return;
+        mDiscoveryReceiver = null;
+
+        try {
+            mReactContext.unregisterReceiver(receiver);
+        } catch (Exception e) {
+            Log.e(TAG, "Unable to unregister receiver", e);
+            onError(e);
+        }
+
+        if (mDeviceDiscoveryPromise != null) {
+            mDeviceDiscoveryPromise.resolve(discoveredDevicesToWritableArray());
+            mDeviceDiscoveryPromise = null;
+        }
+        if (mDeviceMatchPromise != null) {
+            if (mMatchName == null && mMatchAddress == null) {
+                mDeviceMatchPromise.resolve(discoveredDevicesToWritableArray());
+            } else {
+                mDeviceMatchPromise.resolve(null);
+            }
+            mDeviceMatchPromise = null;
+        }
     }
 
+
     /**
      * Register receiver for bluetooth state change
      */
@@ -775,4 +2137,45 @@ public class RCTBluetoothSerialModule extends ReactContextBaseJavaModule impleme
 
         mReactContext.registerReceiver(bluetoothStateReceiver, intentFilter);
     }
+
+    /**
+     * Device found by discovery
+     */
+    private static class DiscoveredDevice {
+        final BluetoothDevice device;
+        String name;
+        short rssi;
+
+        DiscoveredDevice(BluetoothDevice device, @Nullable String name, short rssi) {
+            this.device = device;
+            this.name = name;
+            this.rssi = rssi;
+        }
+    }
+
+    /**
+     * Event fields written into a bridge map
+     */
+    private static class MapFields implements EventFormat.Fields {
+        private final WritableMap mMap;
+
+        MapFields(WritableMap map) {
+            mMap = map;
+        }
+
+        @Override
+        public void putInt(String key, int value) {
+            mMap.putInt(key, value);
+        }
+
+        @Override
+        public void putDouble(String key, double value) {
+            mMap.putDouble(key, value);
+        }
+
+        @Override
+        public void putString(String key, String value) {
+            mMap.putString(key, value);
+        }
+    }
 }
@@ -1,15 +1,24 @@
 package com.rusel.RCTBluetoothSerial;
 
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.util.UUID;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothSocket;
 import android.util.Log;
+import javax.annotation.Nullable;
 
 import static com.rusel.RCTBluetoothSerial.RCTBluetoothSerialPackage.TAG;
 
@@ -17,38 +26,54 @@ import static com.rusel.RCTBluetoothSerial.RCTBluetoothSerialPackage.TAG;
  * This class does all the work for setting up and managing Bluetooth
  * connections with other devices. It has a thread that listens for
  * incoming connections, a thread for connecting with a device, and a
- * thread for performing data transmissions when connected.
+ * {@link SerialConnection} for performing data transmissions when
+ * connected, which works over any {@link SerialTransport}.
+ *
+ * Connecting, stopping and reconnecting hold the service monitor. The
+ * state and connection of each device are published by compare and set
+ * though, so writes and connection checks never wait for it, even while
+ * a socket is being closed.
  *
  * This code was based on the Android SDK BluetoothChat Sample
  * $ANDROID_SDK/samples/android-17/BluetoothChat
  */
 class RCTBluetoothSerialService {
-    // Debugging
-    private static final boolean D = true;
-
-    // UUIDs
-    private static final UUID UUID_SPP = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
+    private static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+    private static final int DEFAULT_RECONNECT_ATTEMPTS = 10;
+    private static final int DEFAULT_RECONNECT_DELAY = 500;
+    private static final int DEFAULT_RECONNECT_MAX_DELAY = 30000;
 
     // Member fields
     private BluetoothAdapter mAdapter;
-    private ConnectThread mConnectThread;
-    private ConnectedThread mConnectedThread;
+    private final Map<String, ConnectThread> mConnectThreads = new HashMap<>();
+    private final ConcurrentHashMap<String, Link> mLinks = new ConcurrentHashMap<>();
     private RCTBluetoothSerialModule mModule;
-    private String mState;
-
-    // Constants that indicate the current connection state
-    private static final String STATE_NONE = "none";       // we're doing nothing
-    private static final String STATE_CONNECTING = "connecting"; // now initiating an outgoing connection
-    private static final String STATE_CONNECTED = "connected";  // now connected to a remote device
+    private final Map<String, ConnectStrategy> mStrategies = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService mScheduler;
+    private final PipelineStats mStats;
+    private final TraceRecorder mTrace;
+    private volatile int mConnectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private final Map<String, Reconnect> mReconnects = new HashMap<>();
+    private final Random mRandom = new Random();
+    private int mReconnectAttempts = DEFAULT_RECONNECT_ATTEMPTS;
+    private int mReconnectDelay = DEFAULT_RECONNECT_DELAY;
+    private int mReconnectMaxDelay = DEFAULT_RECONNECT_MAX_DELAY;
+
+    private static final Link NO_LINK = new Link(ConnectionState.NONE, null);
 
     /**
      * Constructor. Prepares a new RCTBluetoothSerialModule session.
      * @param module Module which handles service events
+     * @param scheduler Scheduler for connection timeouts
+     * @param stats Statistics of connections
+     * @param trace Trace of connection events
      */
-    RCTBluetoothSerialService(RCTBluetoothSerialModule module) {
+    RCTBluetoothSerialService(RCTBluetoothSerialModule module, ScheduledExecutorService scheduler, PipelineStats stats, TraceRecorder trace) {
         mAdapter = BluetoothAdapter.getDefaultAdapter();
-        mState = STATE_NONE;
         mModule = module;
+        mScheduler = scheduler;
+        mStats = stats;
+        mTrace = trace;
     }
 
     /********************************************/
@@ -57,59 +82,146 @@ class RCTBluetoothSerialService {
 
     /**
      * Start the ConnectThread to initiate a connection to a remote device.
+     * Connections to other devices are not affected.
      * @param device  The BluetoothDevice to connect
      */
     synchronized void connect(BluetoothDevice device) {
-        if (D) Log.d(TAG, "connect to: " + device);
-
-        if (mState.equals(STATE_CONNECTING)) {
-            cancelConnectThread(); // Cancel any thread attempting to make a connection
-        }
+        String address = device.getAddress();
 
-        cancelConnectedThread(); // Cancel any thread currently running a connection
+        cancelReconnect(address); // Cancel any pending reconnection
+        cancelConnectThread(address); // Cancel any thread attempting to make a connection
+        setState(address, ConnectionState.CONNECTING, null); // Cancel any connection currently running
 
         // Start the thread to connect with the given device
-        mConnectThread = new ConnectThread(device);
-        mConnectThread.start();
-        setState(STATE_CONNECTING);
+        ConnectThread thread = new ConnectThread(device, null);
+        mConnectThreads.put(address, thread);
+        thread.start();
     }
 
     /**
-     * Check whether service is connected to device
+     * Use an already open transport as connection to device, for example a
+     * TCP connection to a sensor simulator. It is not reconnected when lost.
+     * @param address Address the device is known by
+     * @param transport Open transport
+     */
+    synchronized void connect(String address, SerialTransport transport) {
+        cancelReconnect(address);
+        cancelConnectThread(address);
+        connectionSuccess(transport, address, address, null);
+    }
+
+    /**
+     * Set how long a single connection attempt may take before the next
+     * socket strategy is tried
+     * @param timeout Timeout in ms, 0 to wait until the system gives up
+     */
+    void setConnectTimeout(int timeout) {
+        mConnectTimeout = timeout;
+    }
+
+    /**
+     * Configure reconnection after connection loss. Delays grow exponentially
+     * from initialDelay up to maxDelay, each randomized down to half.
+     * @param attempts Number of attempts before the connection is reported lost, 0 to disable
+     * @param initialDelay Delay before the first attempt in ms
+     * @param maxDelay Maximum delay in ms
+     */
+    synchronized void setAutoReconnect(int attempts, int initialDelay, int maxDelay) {
+        mReconnectAttempts = Math.max(0, attempts);
+        mReconnectDelay = Math.max(1, initialDelay);
+        mReconnectMaxDelay = Math.max(mReconnectDelay, maxDelay);
+    }
+
+    /**
+     * Check whether service is connected to any device
      * @return Is connected to device
      */
     boolean isConnected () {
-        return getState().equals(STATE_CONNECTED);
+        for (Link link : mLinks.values()) {
+            if (link.connection != null) return true;
+        }
+        return false;
     }
 
     /**
-     * Write to the ConnectedThread in an unsynchronized manner
-     * @param out The bytes to write
-     * @see ConnectedThread#write(byte[])
+     * Check whether service is connected to device
+     * @param address Address of device
+     * @return Is connected to device
+     */
+    boolean isConnected (String address) {
+        return getLink(address).state == ConnectionState.CONNECTED;
+    }
+
+    /**
+     * Get addresses of all connected devices
+     * @return Device addresses
      */
-    void write(byte[] out) {
-        if (D) Log.d(TAG, "Write in service, state is " + STATE_CONNECTED);
-        ConnectedThread r; // Create temporary object
-
-        // Synchronize a copy of the ConnectedThread
-        synchronized (this) {
-            if (!isConnected()) return;
-            r = mConnectedThread;
+    List<String> getConnectedAddresses() {
+        List<String> addresses = new ArrayList<>();
+        for (Map.Entry<String, Link> entry : mLinks.entrySet()) {
+            if (entry.getValue().connection != null) addresses.add(entry.getKey());
         }
+        return addresses;
+    }
+
+    /**
+     * Queue write to the connection of device without locking, it is
+     * performed by the writer thread of the connection
+     * @param address Address of device
+     * @param out The bytes to write
+     * @param callback Notified once the bytes were sent or could not be sent, may be null
+     * @return Whether the device is connected, callback is not called if it is not
+     */
+    boolean write(final String address, byte[] out, final SerialWriter.Callback callback) {
+        SerialConnection connection = getLink(address).connection;
+        if (connection == null) return false;
+
+        final int length = out.length;
+        mTrace.record(TraceRecorder.Event.WRITE, address, length, 0);
+        SerialWriter.Callback reporting = new SerialWriter.Callback() {
+            @Override
+            public void onWritten() {
+                mStats.bytesWritten.addAndGet(length);
+                if (callback != null) callback.onWritten();
+            }
 
-        r.write(out); // Perform the write unsynchronized
+            @Override
+            public void onFailed(Exception e) {
+                mStats.writesFailed.incrementAndGet();
+                mTrace.record(TraceRecorder.Event.WRITE_FAILED, address, length, 0);
+                // Writes dropped on close are reported by the connection lost path
+                if (!(e instanceof SerialWriter.ClosedException)) {
+                    Log.e(TAG, "Exception during write", e);
+                    mModule.onError(e);
+                }
+                if (callback != null) callback.onFailed(e);
+            }
+        };
+        if (!connection.write(out, reporting)) {
+            reporting.onFailed(new IOException("Write queue is full"));
+        }
+        return true;
     }
 
     /**
-     * Stop all threads
+     * Stop all threads of device
+     * @param address Address of device
      */
-    synchronized void stop() {
-        if (D) Log.d(TAG, "stop");
+    synchronized void stop(String address) {
+        mTrace.record(TraceRecorder.Event.STOP, address);
 
-        cancelConnectThread();
-        cancelConnectedThread();
+        cancelReconnect(address);
+        cancelConnectThread(address);
+        setState(address, ConnectionState.NONE, null);
+    }
 
-        setState(STATE_NONE);
+    /**
+     * Stop all threads of all devices
+     */
+    synchronized void stop() {
+        for (String address : new ArrayList<>(mLinks.keySet())) {
+            stop(address);
+        }
     }
 
     /*********************/
@@ -117,74 +229,274 @@ class RCTBluetoothSerialService {
     /*********************/
 
     /**
-     * Return the current connection state.
+     * Return the current link to device without locking
+     * @param address Address of device
+     */
+    private Link getLink(String address) {
+        Link link = mLinks.get(address);
+        return link != null ? link : NO_LINK;
+    }
+
+    /**
+     * Move device to state by compare and set of its link, readers see the
+     * old or the new link as a whole. A connection replaced by this is
+     * closed.
+     * @param address Address of device
+     * @param state Next state
+     * @param connection Connection of the device, only for CONNECTED
+     * @return False if the transition is not allowed from the current state
+     */
+    private boolean setState(String address, ConnectionState state, @Nullable SerialConnection connection) {
+        Link next = state != ConnectionState.NONE ? new Link(state, connection) : null;
+        Link current;
+        while (true) {
+            current = mLinks.get(address);
+            ConnectionState from = current != null ? current.state : ConnectionState.NONE;
+            if (!from.canMoveTo(state)) {
+                Log.e(TAG, "Connection of " + address + " can not move from " + from + " to " + state);
+                return false;
+            }
+            boolean set;
+            if (current == null) {
+                set = next == null || mLinks.putIfAbsent(address, next) == null;
+            } else if (next == null) {
+                set = mLinks.remove(address, current);
+            } else {
+                set = mLinks.replace(address, current, next);
+            }
+            if (set) break;
+        }
+
+        if (current != null && current.connection != null && current.connection != connection) {
+            closeConnection(current.connection);
+        }
+        return true;
+    }
+
+    /**
+     * Start the SerialConnection to begin managing a connection
+     * @param transport  The transport on which the connection was made
+     * @param address  Address of the device that has been connected
+     * @param name  Name of the device
+     * @param reconnect Reconnection which made the connection, null for a connection requested by the app
      */
-    private synchronized String getState() {
-        return mState;
+    private synchronized void connectionSuccess(SerialTransport transport, String address, String name, @Nullable Reconnect reconnect) {
+        cancelConnectThread(address); // Cancel any thread attempting to make a connection
+
+        // Start the connection to perform transmissions
+        SerialConnection connection;
+        try {
+            connection = new SerialConnection(address, transport, mConnectionListener, mStats, mTrace);
+        } catch (IOException e) {
+            Log.e(TAG, "temp sockets not created", e);
+            closeTransport(transport);
+            connectionNotStarted(address, reconnect, e);
+            return;
+        }
+        // Replaces any connection currently running
+        if (!setState(address, ConnectionState.CONNECTED, connection)) {
+            closeConnection(connection);
+            connectionNotStarted(address, reconnect, new IOException("Connection to " + address + " can not be started in its current state"));
+            return;
+        }
+        connection.start();
+
+        if (reconnect != null) {
+            mReconnects.remove(address);
+            mStats.reconnects.incrementAndGet();
+            mModule.onReconnected(address, reconnect.attempt);
+        } else {
+            mModule.onConnectionSuccess(address, "Connected to " + name);
+        }
     }
 
     /**
-     * Set the current state of connection
-     * @param state  An integer defining the current connection state
+     * Report a connection which was made but could not be started, it is
+     * attempted again if it was a reconnect
+     * @param address Address of device
+     * @param reconnect Reconnect the connection was made by, null for a first connect
+     * @param e Reason
      */
-    private synchronized void setState(String state) {
-        if (D) Log.d(TAG, "setState() " + mState + " -> " + state);
-        mState = state;
+    private void connectionNotStarted(String address, @Nullable Reconnect reconnect, Exception e) {
+        mModule.onError(e);
+        if (reconnect != null) {
+            scheduleReconnect(reconnect);
+        } else {
+            connectionFailed(address);
+        }
     }
 
     /**
-     * Start the ConnectedThread to begin managing a Bluetooth connection
-     * @param socket  The BluetoothSocket on which the connection was made
-     * @param device  The BluetoothDevice that has been connected
+     * Indicate that the connection attempt failed and notify the UI Activity.
+     * @param address Address of device
      */
-    private synchronized void connectionSuccess(BluetoothSocket socket, BluetoothDevice device) {
-        if (D) Log.d(TAG, "connected");
+    private void connectionFailed(String address) {
+        mModule.onConnectionFailed(address, "Unable to connect to device"); // Send a failure message
+        RCTBluetoothSerialService.this.stop(address); // Start the service over to restart listening mode
+    }
 
-        cancelConnectThread(); // Cancel any thread attempting to make a connection
-        cancelConnectedThread(); // Cancel any thread currently running a connection
+    /**
+     * Indicate that the connection was lost and notify the UI Activity.
+     * @param address Address of device
+     */
+    private void connectionLost(String address) {
+        mModule.onConnectionLost(address, "Device connection was lost");  // Send a failure message
+        RCTBluetoothSerialService.this.stop(address); // Start the service over to restart listening mode
+    }
 
-        // Start the thread to manage the connection and perform transmissions
-        mConnectedThread = new ConnectedThread(socket);
-        mConnectedThread.start();
+    /**
+     * Handle loss of an established connection, reconnect if enabled and
+     * possible for the transport or report the connection as lost. Called
+     * with the monitor held.
+     * @param connection Lost connection
+     */
+    private void connectionInterrupted(SerialConnection connection) {
+        String address = connection.getAddress();
+        SerialTransport transport = connection.getTransport();
+        if (mReconnectAttempts == 0 || !(transport instanceof RfcommTransport)) {
+            connectionLost(address);
+            return;
+        }
 
-        mModule.onConnectionSuccess("Connected to " + device.getName());
-        setState(STATE_CONNECTED);
+        setState(address, ConnectionState.RECONNECTING, null);
+        Reconnect reconnect = new Reconnect(((RfcommTransport) transport).getDevice());
+        mReconnects.put(address, reconnect);
+        scheduleReconnect(reconnect);
     }
 
+    /**
+     * Schedule next attempt of reconnection or give up once all attempts are used.
+     * Called with the monitor held.
+     * @param reconnect Reconnection
+     */
+    private void scheduleReconnect(Reconnect reconnect) {
+        String address = reconnect.device.getAddress();
+        if (reconnect.attempt >= mReconnectAttempts) {
+            mReconnects.remove(address);
+            connectionLost(address);
+            return;
+        }
+
+        reconnect.attempt++;
+        long delay = Math.min(mReconnectMaxDelay, (long) mReconnectDelay << Math.min(reconnect.attempt - 1, 30));
+        delay -= (long) (mRandom.nextDouble() * delay / 2);
+
+        if (!setState(address, ConnectionState.RECONNECTING, null)) {
+            mReconnects.remove(address);
+            return;
+        }
+        mModule.onReconnecting(address, reconnect.attempt, delay);
+        try {
+            reconnect.future = mScheduler.schedule(reconnect, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            mReconnects.remove(address);
+            connectionLost(address);
+        }
+    }
 
     /**
-     * Indicate that the connection attempt failed and notify the UI Activity.
+     * Cancel pending reconnection of device
+     * @param address Address of device
      */
-    private void connectionFailed() {
-        mModule.onConnectionFailed("Unable to connect to device"); // Send a failure message
-        RCTBluetoothSerialService.this.stop(); // Start the service over to restart listening mode
+    private void cancelReconnect(String address) {
+        Reconnect reconnect = mReconnects.remove(address);
+        if (reconnect != null && reconnect.future != null) {
+            reconnect.future.cancel(false);
+        }
     }
 
     /**
-     * Indicate that the connection was lost and notify the UI Activity.
+     * Cancel connect thread of device
+     * @param address Address of device
      */
-    private void connectionLost() {
-        mModule.onConnectionLost("Device connection was lost");  // Send a failure message
-        RCTBluetoothSerialService.this.stop(); // Start the service over to restart listening mode
+    private void cancelConnectThread (String address) {
+        ConnectThread thread = mConnectThreads.remove(address);
+        if (thread != null) {
+            thread.cancel();
+        }
     }
 
+    private void closeConnection(SerialConnection connection) {
+        try {
+            connection.close();
+        } catch (Exception e) {
+            Log.e(TAG, "close() of connect socket failed", e);
+        }
+    }
+
+    private void closeTransport(SerialTransport transport) {
+        try {
+            transport.close();
+        } catch (Exception e) {
+            Log.e(TAG, "close() of connect socket failed", e);
+        }
+    }
+
+    /**
+     * Passes data of connections to the module
+     */
+    private final SerialConnection.Listener mConnectionListener = new SerialConnection.Listener() {
+        @Override
+        public void onBytes(SerialConnection connection, byte[] data, int length) {
+            mModule.onBytes(connection.getAddress(), data, length);
+        }
+
+        @Override
+        public void onFrame(SerialConnection connection, ByteBuffer frame) {
+            mModule.onData(frame, connection.getAddress()); // Send the new frame to the UI Activity
+        }
+
+        @Override
+        public void onDisconnected(SerialConnection connection, Exception e) {
+            // A connection replaced by a new connection to the same device must not tear it down
+            synchronized (RCTBluetoothSerialService.this) {
+                if (getLink(connection.getAddress()).connection == connection) {
+                    Log.e(TAG, "disconnected", e);
+                    mStats.connectionsLost.incrementAndGet();
+                    mTrace.record(TraceRecorder.Event.CONNECTION_LOST, connection.getAddress());
+                    mModule.onError(e);
+                    connectionInterrupted(connection);
+                }
+            }
+        }
+    };
+
     /**
-     * Cancel connect thread
+     * State of a device together with its connection, replaced as a whole
+     * so both are always seen consistently
      */
-    private void cancelConnectThread () {
-        if (mConnectThread != null) {
-            mConnectThread.cancel();
-            mConnectThread = null;
+    private static final class Link {
+        final ConnectionState state;
+        final SerialConnection connection;
+
+        Link(ConnectionState state, @Nullable SerialConnection connection) {
+            this.state = state;
+            this.connection = connection;
         }
     }
 
     /**
-     * Cancel connected thread
+     * Reconnection of a device after connection loss, runs one connection
+     * attempt each time it is scheduled
      */
-    private void cancelConnectedThread () {
-        if (mConnectedThread != null) {
-            mConnectedThread.cancel();
-            mConnectedThread = null;
+    private class Reconnect implements Runnable {
+        final BluetoothDevice device;
+        int attempt;
+        ScheduledFuture<?> future;
+
+        Reconnect(BluetoothDevice device) {
+            this.device = device;
+        }
+
+        @Override
+        public void run() {
+            synchronized (RCTBluetoothSerialService.this) {
+                String address = device.getAddress();
+                if (mReconnects.get(address) != this) return;
+                ConnectThread thread = new ConnectThread(device, this);
+                mConnectThreads.put(address, thread);
+                thread.start();
+            }
         }
     }
 
@@ -192,160 +504,154 @@ class RCTBluetoothSerialService {
      * This thread runs while attempting to make an outgoing connection
      * with a device. It runs straight through; the connection either
      * succeeds or fails.
+     *
+     * Socket strategies are tried one after the other, starting with the
+     * one which last worked for the device. Each attempt is aborted by
+     * closing its socket once the connect timeout passes.
      */
     private class ConnectThread extends Thread {
-        private BluetoothSocket mmSocket;
         private final BluetoothDevice mmDevice;
+        private final Reconnect mmReconnect;
+        private volatile BluetoothSocket mmSocket;
+        private volatile boolean mmCancelled;
 
-        ConnectThread(BluetoothDevice device) {
+        ConnectThread(BluetoothDevice device, @Nullable Reconnect reconnect) {
             mmDevice = device;
-            BluetoothSocket tmp = null;
-
-            // Get a BluetoothSocket for a connection with the given BluetoothDevice
-            try {
-                tmp = device.createRfcommSocketToServiceRecord(UUID_SPP);
-            } catch (Exception e) {
-                mModule.onError(e);
-                Log.e(TAG, "Socket create() failed", e);
-            }
-            mmSocket = tmp;
+            mmReconnect = reconnect;
         }
 
         public void run() {
-            if (D) Log.d(TAG, "BEGIN mConnectThread");
             setName("ConnectThread");
+            String address = mmDevice.getAddress();
 
             // Always cancel discovery because it will slow down a connection
             mAdapter.cancelDiscovery();
 
-            // Make a connection to the BluetoothSocket
-            try {
-                // This is a blocking call and will only return on a successful connection or an exception
-                if (D) Log.d(TAG,"Connecting to socket...");
-                mmSocket.connect();
-                if (D) Log.d(TAG,"Connected");
-            } catch (Exception e) {
-                Log.e(TAG, e.toString());
-                mModule.onError(e);
+            BluetoothSocket socket = null;
+            for (ConnectStrategy strategy : ConnectStrategy.inOrder(mStrategies.get(address))) {
+                if (mmCancelled) break;
+                socket = attempt(strategy);
+                if (socket != null) {
+                    mStrategies.put(address, strategy);
+                    break;
+                }
+            }
 
-                // Some 4.1 devices have problems, try an alternative way to connect
-                // See https://github.com/don/RCTBluetoothSerialModule/issues/89
-                try {
-                    Log.i(TAG,"Trying fallback...");
-                    mmSocket = (BluetoothSocket) mmDevice.getClass().getMethod("createRfcommSocket", new Class[] {int.class}).invoke(mmDevice,1);
-                    mmSocket.connect();
-                    Log.i(TAG,"Connected");
-                } catch (Exception e2) {
-                    Log.e(TAG, "Couldn't establish a Bluetooth connection.");
-                    mModule.onError(e2);
-                    try {
-                        mmSocket.close();
-                    } catch (Exception e3) {
-                        Log.e(TAG, "unable to close() socket during connection failure", e3);
-                        mModule.onError(e3);
+            if (socket == null) {
+                Log.e(TAG, "Couldn't establish a Bluetooth connection.");
+                // Only report failure if this attempt was not replaced or cancelled meanwhile
+                synchronized (RCTBluetoothSerialService.this) {
+                    if (mConnectThreads.get(address) != this) return;
+                    if (mmReconnect == null) {
+                        connectionFailed(address);
+                    } else if (mReconnects.get(address) == mmReconnect) {
+                        mConnectThreads.remove(address);
+                        scheduleReconnect(mmReconnect);
                     }
-                    connectionFailed();
-                    return;
                 }
+                return;
             }
 
-            // Reset the ConnectThread because we're done
+            // Reset the ConnectThread because we're done, unless it was replaced or cancelled meanwhile
             synchronized (RCTBluetoothSerialService.this) {
-                mConnectThread = null;
+                if (mConnectThreads.get(address) != this) {
+                    cancel();
+                    return;
+                }
+                mConnectThreads.remove(address);
+                connectionSuccess(new RfcommTransport(socket, mmDevice), address, mmDevice.getName(), mmReconnect);  // Start the connection
             }
-
-            connectionSuccess(mmSocket, mmDevice);  // Start the connected thread
-
         }
 
-        void cancel() {
+        /**
+         * Connect with one strategy
+         * @param strategy Strategy
+         * @return Connected socket or null if the attempt failed
+         */
+        private BluetoothSocket attempt(final ConnectStrategy strategy) {
+            final String address = mmDevice.getAddress();
+            mStats.connectAttempts.incrementAndGet();
+            mTrace.record(TraceRecorder.Event.CONNECT, address, strategy.ordinal(), 0);
+            final BluetoothSocket socket;
             try {
-                mmSocket.close();
+                socket = strategy.createSocket(mmDevice);
             } catch (Exception e) {
-                Log.e(TAG, "close() of connect socket failed", e);
+                Log.e(TAG, "Socket create() failed", e);
+                mStats.connectFailures.incrementAndGet();
+                mTrace.record(TraceRecorder.Event.CONNECT_FAILED, address, strategy.ordinal(), 0);
                 mModule.onError(e);
+                return null;
             }
-        }
-    }
-
-    /**
-     * This thread runs during a connection with a remote device.
-     * It handles all incoming and outgoing transmissions.
-     */
-    private class ConnectedThread extends Thread {
-        private final BluetoothSocket mmSocket;
-        private final InputStream mmInStream;
-        private final OutputStream mmOutStream;
-
-        ConnectedThread(BluetoothSocket socket) {
-            if (D) Log.d(TAG, "create ConnectedThread");
             mmSocket = socket;
-            InputStream tmpIn = null;
-            OutputStream tmpOut = null;
-
-            // Get the BluetoothSocket input and output streams
-            try {
-                tmpIn = socket.getInputStream();
-                tmpOut = socket.getOutputStream();
-            } catch (Exception e) {
-                Log.e(TAG, "temp sockets not created", e);
-                mModule.onError(e);
+            if (mmCancelled) {
+                close(socket);
+                return null;
             }
 
-            mmInStream = tmpIn;
-            mmOutStream = tmpOut;
-        }
-
-        public void run() {
-            Log.i(TAG, "BEGIN mConnectedThread");
-            byte[] buffer = new byte[1024];
-            int bytes = 0;
-
-            // Keep listening to the InputStream while connected
-            while (true) {
+            // Whoever sets the flag first decides between timeout and success
+            final AtomicBoolean finished = new AtomicBoolean();
+            ScheduledFuture<?> timeout = null;
+            final int connectTimeout = mConnectTimeout;
+            if (connectTimeout > 0) {
                 try {
-                    while(bytes != 23) {
-                        bytes = mmInStream.read(buffer); // Read from the InputStream
-                        Log.i("DATAFROMBYTES", bytes + " ");
-                        if(bytes != 23)
-                            Thread.sleep(15000);
-                    }
-                    bytes = 0;
-                    String data = new String(buffer, 0, bytes, "ISO-8859-1");
-                    Log.i("DATAFROMString", data);
-                    ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
-                    byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-                    mModule.onData(byteBuffer); // Send the new data String to the UI Activity
-                } catch (Exception e) {
-                    Log.e(TAG, "disconnected", e);
-                    mModule.onError(e);
-                    connectionLost();
-                    RCTBluetoothSerialService.this.stop(); // Start the service over to restart listening mode
-                    break;
+                    timeout = mScheduler.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (finished.compareAndSet(false, true)) {
+                                Log.e(TAG, "Connection attempt timed out");
+                                mStats.connectTimeouts.incrementAndGet();
+                                mTrace.record(TraceRecorder.Event.CONNECT_TIMEOUT, address, strategy.ordinal(), connectTimeout);
+                                close(socket);
+                            }
+                        }
+                    }, connectTimeout, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    Log.e(TAG, "Connection attempt without timeout", e);
+                }
+            }
+
+            long start = System.nanoTime();
+            try {
+                // This is a blocking call and will only return on a successful connection or an exception
+                socket.connect();
+                if (!finished.compareAndSet(false, true)) {
+                    throw new IOException("Connection attempt timed out");
                 }
+                long micros = (System.nanoTime() - start) / 1000;
+                mStats.connect.record(micros);
+                mTrace.record(TraceRecorder.Event.CONNECTED, address, strategy.ordinal(), micros);
+                return socket;
+            } catch (Exception e) {
+                finished.set(true);
+                mStats.connectFailures.incrementAndGet();
+                mTrace.record(TraceRecorder.Event.CONNECT_FAILED, address, strategy.ordinal(), (System.nanoTime() - start) / 1000);
+                Log.e(TAG, e.toString());
+                mModule.onError(e);
+                close(socket);
+                return null;
+            } finally {
+                if (timeout != null) timeout.cancel(false);
             }
         }
 
-        /**
-         * Write to the connected OutStream.
-         * @param buffer  The bytes to write
-         */
-        void write(byte[] buffer) {
+        private void close(BluetoothSocket socket) {
             try {
-                String str = new String(buffer, "UTF-8");
-                if (D) Log.d(TAG, "Write in thread " + str);
-                mmOutStream.write(buffer);
+                socket.close();
             } catch (Exception e) {
-                Log.e(TAG, "Exception during write", e);
+                Log.e(TAG, "unable to close() socket during connection failure", e);
                 mModule.onError(e);
             }
         }
 
         void cancel() {
+            mmCancelled = true;
+            BluetoothSocket socket = mmSocket;
+            if (socket == null) return;
             try {
-                mmSocket.close();
+                socket.close();
             } catch (Exception e) {
                 Log.e(TAG, "close() of connect socket failed", e);
+                mModule.onError(e);
             }
         }
     }
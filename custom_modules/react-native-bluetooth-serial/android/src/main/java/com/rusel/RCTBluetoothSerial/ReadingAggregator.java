@@ -0,0 +1,167 @@
+package com.rusel.RCTBluetoothSerial;
+
+/**
+ * Tumbling window aggregates of the measurement channels.
+ *
+ * For each of the {@link #WINDOW_LENGTHS} the minimum, maximum, sum and
+ * count of every channel are updated in place as readings arrive. Windows
+ * are aligned to multiples of their length since epoch, the first reading
+ * past the end of a window closes it and hands it to the listener before
+ * the next one starts. Windows of a device which went quiet are closed
+ * on time by {@link #closeDue}, and {@link #flush} reports the open
+ * windows when the connection ends so the next one starts over. Battery
+ * is not a measurement and is left out.
+ *
+ * Readings are added by the reader thread of a single device and windows
+ * are closed from a timer, so all methods are synchronized. The listener
+ * is called with the monitor held.
+ */
+final class ReadingAggregator {
+    static final long[] WINDOW_LENGTHS = {60 * 1000L, 15 * 60 * 1000L, 60 * 60 * 1000L};
+    static final int CHANNEL_COUNT = SensorFrame.CHANNEL_TVOC + 1;
+
+    /**
+     * Notified when a window closes, called on the thread adding readings
+     * or closing windows
+     */
+    interface Listener {
+        /**
+         * Handle closed window
+         * @param window Window, only valid during the call
+         */
+        void onWindowClosed(Window window);
+    }
+
+    /**
+     * Aggregates of one window
+     */
+    static final class Window {
+        private final long mLength;
+        private final short[] mMin = new short[CHANNEL_COUNT];
+        private final short[] mMax = new short[CHANNEL_COUNT];
+        private final long[] mSum = new long[CHANNEL_COUNT];
+        private long mStart;
+        private int mCount;
+
+        Window(long length) {
+            mLength = length;
+        }
+
+        long getLength() {
+            return mLength;
+        }
+
+        /**
+         * @return Start of window in ms since epoch
+         */
+        long getStart() {
+            return mStart;
+        }
+
+        /**
+         * @return Number of readings in window
+         */
+        int getCount() {
+            return mCount;
+        }
+
+        short getMin(int channel) {
+            return mMin[channel];
+        }
+
+        short getMax(int channel) {
+            return mMax[channel];
+        }
+
+        double getMean(int channel) {
+            return mCount > 0 ? (double) mSum[channel] / mCount : 0;
+        }
+
+        private void add(SensorFrame frame) {
+            for (int channel = 0; channel < CHANNEL_COUNT; channel++) {
+                short value = frame.getChannel(channel);
+                if (mCount == 0 || value < mMin[channel]) mMin[channel] = value;
+                if (mCount == 0 || value > mMax[channel]) mMax[channel] = value;
+                mSum[channel] += value;
+            }
+            mCount++;
+        }
+
+        private void reset(long start) {
+            mStart = start;
+            mCount = 0;
+            for (int channel = 0; channel < CHANNEL_COUNT; channel++) {
+                mSum[channel] = 0;
+            }
+        }
+    }
+
+    private final Window[] mWindows = new Window[WINDOW_LENGTHS.length];
+    private final Listener mListener;
+
+    /**
+     * Constructor
+     * @param listener Listener
+     */
+    ReadingAggregator(Listener listener) {
+        mListener = listener;
+        for (int i = 0; i < mWindows.length; i++) {
+            mWindows[i] = new Window(WINDOW_LENGTHS[i]);
+        }
+    }
+
+    /**
+     * Add reading to all windows
+     * @param frame Decoded frame with data
+     * @param timestamp Time the frame was received
+     */
+    synchronized void add(SensorFrame frame, long timestamp) {
+        for (Window window : mWindows) {
+            long start = timestamp - timestamp % window.mLength;
+            if (window.mCount == 0) {
+                window.reset(start);
+            } else if (start > window.mStart) {
+                mListener.onWindowClosed(window);
+                window.reset(start);
+            }
+            // A reading from before the window, after the clock was set back, is counted in it
+            window.add(frame);
+        }
+    }
+
+    /**
+     * Close windows which ended, the next reading starts a new one
+     * @param now Current time in ms since epoch, minus a grace period for
+     * readings still on their way
+     */
+    synchronized void closeDue(long now) {
+        for (Window window : mWindows) {
+            if (window.mCount > 0 && now >= window.mStart + window.mLength) {
+                mListener.onWindowClosed(window);
+                window.reset(0);
+            }
+        }
+    }
+
+    /**
+     * Close open windows, even if they did not end yet, so the next
+     * reading starts new ones
+     */
+    synchronized void flush() {
+        for (Window window : mWindows) {
+            if (window.mCount > 0) {
+                mListener.onWindowClosed(window);
+            }
+        }
+        reset();
+    }
+
+    /**
+     * Drop open windows without reporting them
+     */
+    synchronized void reset() {
+        for (Window window : mWindows) {
+            window.reset(0);
+        }
+    }
+}
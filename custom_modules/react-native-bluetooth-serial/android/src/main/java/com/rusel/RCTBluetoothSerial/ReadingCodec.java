@@ -0,0 +1,253 @@
+package com.rusel.RCTBluetoothSerial;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Compressed columnar encoding of readings.
+ *
+ * Readings are encoded in blocks which can be decoded on their own. A
+ * block starts with a fixed {@link #HEADER_SIZE} byte header holding the
+ * number of readings, payload length and time range, followed by one
+ * column after the other:
+ *
+ * <ul>
+ * <li>timestamps as delta of delta to the previous timestamp, the first
+ * one is in the header, so readings arriving at a steady rate cost about
+ * a byte each</li>
+ * <li>last logged record and every channel as delta to the previous
+ * value</li>
+ * </ul>
+ *
+ * Deltas are zig-zag encoded into unsigned varints, so slowly changing
+ * values take a single byte. All numbers in the header are little endian.
+ */
+final class ReadingCodec {
+    static final int HEADER_SIZE = 32;
+    static final int MAGIC = 0x4b4c4252; // "RBLK"
+    static final int VERSION = 1;
+
+    /**
+     * Readings stored column by column
+     */
+    static final class Columns {
+        final long[] timestamps;
+        final int[] lastLoggedRecords;
+        final short[][] channels;
+        int size;
+
+        /**
+         * Constructor
+         * @param capacity Maximum number of readings
+         */
+        Columns(int capacity) {
+            timestamps = new long[capacity];
+            lastLoggedRecords = new int[capacity];
+            channels = new short[SensorFrame.CHANNEL_COUNT][capacity];
+        }
+
+        int capacity() {
+            return timestamps.length;
+        }
+
+        /**
+         * Append reading
+         * @param reading Stored reading
+         */
+        void add(StoredReading reading) {
+            int i = size++;
+            timestamps[i] = reading.getTimestamp();
+            lastLoggedRecords[i] = reading.getLastLoggedRecord();
+            for (int channel = 0; channel < SensorFrame.CHANNEL_COUNT; channel++) {
+                channels[channel][i] = reading.getChannel(channel);
+            }
+        }
+    }
+
+    private ReadingCodec() {
+    }
+
+    /**
+     * @param count Number of readings
+     * @return Upper bound of the encoded size of a block
+     */
+    static int maxEncodedSize(int count) {
+        // Varints of a 64 bit delta of delta take up to 10 bytes, of 32 bit deltas up to 5
+        return HEADER_SIZE + count * (10 + 5 + SensorFrame.CHANNEL_COUNT * 3);
+    }
+
+    /**
+     * Encode readings into a block
+     * @param columns Readings, at least one
+     * @param out Destination with at least maxEncodedSize bytes remaining,
+     * the position is advanced past the block
+     */
+    static void encode(Columns columns, ByteBuffer out) {
+        int count = columns.size;
+        ByteOrder order = out.order();
+        out.order(ByteOrder.LITTLE_ENDIAN);
+
+        int header = out.position();
+        out.position(header + HEADER_SIZE);
+
+        long[] timestamps = columns.timestamps;
+        long previousDelta = 0;
+        for (int i = 1; i < count; i++) {
+            long delta = timestamps[i] - timestamps[i - 1];
+            putVarint(out, zigZag(delta - previousDelta));
+            previousDelta = delta;
+        }
+
+        int[] records = columns.lastLoggedRecords;
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            putVarint(out, zigZag(records[i] - previous));
+            previous = records[i];
+        }
+
+        for (int channel = 0; channel < SensorFrame.CHANNEL_COUNT; channel++) {
+            short[] values = columns.channels[channel];
+            previous = 0;
+            for (int i = 0; i < count; i++) {
+                putVarint(out, zigZag(values[i] - previous));
+                previous = values[i];
+            }
+        }
+
+        out.putInt(header, MAGIC);
+        out.putShort(header + 4, (short) VERSION);
+        out.putShort(header + 6, (short) SensorFrame.CHANNEL_COUNT);
+        out.putInt(header + 8, count);
+        out.putInt(header + 12, out.position() - header - HEADER_SIZE);
+        out.putLong(header + 16, timestamps[0]);
+        out.putLong(header + 24, timestamps[count - 1]);
+        out.order(order);
+    }
+
+    /**
+     * Decode block
+     * @param in Source positioned at a block, the position is advanced past it
+     * @param columns Destination with capacity for the readings of the block
+     */
+    static void decode(ByteBuffer in, Columns columns) throws IOException {
+        ByteOrder order = in.order();
+        in.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            int header = in.position();
+            int count = readHeader(in, header);
+            if (count > columns.capacity()) {
+                throw new IOException("Block of " + count + " readings does not fit");
+            }
+            int end = header + HEADER_SIZE + in.getInt(header + 12);
+            in.position(header + HEADER_SIZE);
+
+            long[] timestamps = columns.timestamps;
+            long timestamp = in.getLong(header + 16);
+            long delta = 0;
+            timestamps[0] = timestamp;
+            for (int i = 1; i < count; i++) {
+                delta += unZigZag(getVarint(in));
+                timestamp += delta;
+                timestamps[i] = timestamp;
+            }
+
+            int[] records = columns.lastLoggedRecords;
+            long value = 0;
+            for (int i = 0; i < count; i++) {
+                value += unZigZag(getVarint(in));
+                records[i] = (int) value;
+            }
+
+            for (int channel = 0; channel < SensorFrame.CHANNEL_COUNT; channel++) {
+                short[] values = columns.channels[channel];
+                value = 0;
+                for (int i = 0; i < count; i++) {
+                    value += unZigZag(getVarint(in));
+                    values[i] = (short) value;
+                }
+            }
+
+            if (in.position() != end) {
+                throw new IOException("Corrupt block payload");
+            }
+            columns.size = count;
+        } catch (RuntimeException e) {
+            // Buffer underflows and overflows of truncated data
+            throw new IOException("Corrupt block", e);
+        } finally {
+            in.order(order);
+        }
+    }
+
+    /**
+     * Validate block header
+     * @param in Source
+     * @param header Offset of the block
+     * @return Number of readings in block
+     */
+    static int readHeader(ByteBuffer in, int header) throws IOException {
+        if (in.limit() - header < HEADER_SIZE
+                || in.getInt(header) != MAGIC
+                || in.getShort(header + 4) != VERSION
+                || in.getShort(header + 6) != SensorFrame.CHANNEL_COUNT) {
+            throw new IOException("Not a reading block");
+        }
+        int count = in.getInt(header + 8);
+        int length = in.getInt(header + 12);
+        if (count <= 0 || length < 0 || length > in.limit() - header - HEADER_SIZE) {
+            throw new IOException("Truncated reading block");
+        }
+        return count;
+    }
+
+    /**
+     * @param in Little endian source positioned at a valid block
+     * @return Size of the block including header
+     */
+    static int blockSize(ByteBuffer in) {
+        return HEADER_SIZE + in.getInt(in.position() + 12);
+    }
+
+    /**
+     * @param in Little endian source positioned at a valid block
+     * @return Timestamp of the first reading in block
+     */
+    static long firstTimestamp(ByteBuffer in) {
+        return in.getLong(in.position() + 16);
+    }
+
+    /**
+     * @param in Little endian source positioned at a valid block
+     * @return Timestamp of the last reading in block
+     */
+    static long lastTimestamp(ByteBuffer in) {
+        return in.getLong(in.position() + 24);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void putVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static long getVarint(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+}
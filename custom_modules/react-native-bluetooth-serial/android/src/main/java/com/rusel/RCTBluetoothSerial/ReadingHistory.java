@@ -0,0 +1,130 @@
+package com.rusel.RCTBluetoothSerial;
+
+/**
+ * Fixed capacity ring buffer of decoded readings.
+ *
+ * Every measurement channel is kept in its own primitive column next to
+ * the receive timestamps, so adding a reading is a handful of array stores
+ * and the oldest reading is overwritten once the buffer is full. Readings
+ * are addressed by age, 0 being the newest one.
+ *
+ * Writes come from the reader thread and reads from the module thread,
+ * callers which read several values have to hold the monitor of this
+ * object to get a consistent view.
+ */
+class ReadingHistory {
+    private final int mCapacity;
+    private final long[] mTimestamps;
+    private final int[] mLastLoggedRecords;
+    private final short[][] mChannels;
+
+    private int mHead; // Index where the next reading is stored
+    private int mSize;
+    // Age of the newest reading with an earlier timestamp than the one before it, -1 while they only grow
+    private int mDisorder = -1;
+
+    /**
+     * Constructor
+     * @param capacity Maximum number of readings kept
+     */
+    ReadingHistory(int capacity) {
+        mCapacity = capacity;
+        mTimestamps = new long[capacity];
+        mLastLoggedRecords = new int[capacity];
+        mChannels = new short[SensorFrame.CHANNEL_COUNT][capacity];
+    }
+
+    /**
+     * Store decoded frame as the newest reading
+     * @param frame Decoded frame
+     * @param timestamp Time the frame was received
+     */
+    synchronized void add(SensorFrame frame, long timestamp) {
+        // The wall clock may be set back
+        boolean backwards = mSize > 0 && timestamp < mTimestamps[index(0)];
+        int i = mHead;
+        mTimestamps[i] = timestamp;
+        mLastLoggedRecords[i] = frame.getLastLoggedRecord();
+        for (int channel = 0; channel < SensorFrame.CHANNEL_COUNT; channel++) {
+            mChannels[channel][i] = frame.getChannel(channel);
+        }
+        mHead = (i + 1) % mCapacity;
+        if (mSize < mCapacity) mSize++;
+
+        if (backwards) {
+            mDisorder = 0;
+        } else if (mDisorder >= 0 && ++mDisorder >= mSize - 1) {
+            // The reading it was earlier than was overwritten
+            mDisorder = -1;
+        }
+    }
+
+    /**
+     * Drop all readings
+     */
+    synchronized void clear() {
+        mHead = 0;
+        mSize = 0;
+        mDisorder = -1;
+    }
+
+    /**
+     * @return Number of readings kept
+     */
+    synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * Count readings received at or after given time
+     * @param timestamp Time in ms since epoch
+     * @return Number of newest readings which include all readings not
+     * older than timestamp
+     */
+    synchronized int countSince(long timestamp) {
+        if (mDisorder >= 0) {
+            // Clock was set back, find the oldest reading not older than timestamp
+            for (int age = mSize - 1; age >= 0; age--) {
+                if (mTimestamps[index(age)] >= timestamp) return age + 1;
+            }
+            return 0;
+        }
+
+        // Timestamps only grow, so binary search by age
+        int low = 0;
+        int high = mSize;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mTimestamps[index(mid)] >= timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    synchronized long getTimestamp(int age) {
+        return mTimestamps[index(age)];
+    }
+
+    synchronized int getLastLoggedRecord(int age) {
+        return mLastLoggedRecords[index(age)];
+    }
+
+    synchronized short getChannel(int channel, int age) {
+        return mChannels[channel][index(age)];
+    }
+
+    /**
+     * Map age of reading to array index
+     * @param age Age, 0 is the newest reading
+     */
+    private int index(int age) {
+        if (age < 0 || age >= mSize) {
+            throw new IndexOutOfBoundsException("No reading of age " + age);
+        }
+        int i = mHead - 1 - age;
+        return i < 0 ? i + mCapacity : i;
+    }
+}
@@ -0,0 +1,571 @@
+package com.rusel.RCTBluetoothSerial;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Append only store of decoded readings on disk.
+ *
+ * Readings are fixed width records written into a memory mapped segment
+ * file of {@link #SEGMENT_RECORDS} records, appending is a few stores into
+ * the mapping and the kernel takes care of writing pages back. Every
+ * record ends with a checksum written after its fields, so after a crash
+ * the tail of the segment is recovered up to the last complete record.
+ *
+ * When the segment is full a new one is started and the full one is
+ * sealed. Forcing it to disk and packing it with {@link ReadingCodec}
+ * into a file of blocks runs on the packer executor, so appending never
+ * waits for it. A sealed segment stays readable in place until its packed
+ * file is renamed into place, then the segment is deleted. The oldest
+ * segments are deleted beyond the configured limit.
+ *
+ * Readings are expected in order of their timestamps. Range queries skip
+ * segments and blocks by time, read records of unpacked segments in place
+ * and decode packed blocks on the fly. They copy one page of readings at
+ * a time, so the store is not locked while the caller handles them.
+ *
+ * The store only depends on java.nio, all methods are synchronized.
+ */
+final class ReadingStore implements Closeable {
+    static final int RECORD_SIZE = 32;
+    static final int SEGMENT_RECORDS = 32 * 1024;
+    static final int BLOCK_READINGS = 1024;
+
+    private static final int SEGMENT_SIZE = RECORD_SIZE * SEGMENT_RECORDS;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String PACKED_SUFFIX = ".blk";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int CHECKSUM_OFFSET = RECORD_SIZE - 4;
+    private static final int CHECKSUM_SEED = 0x811c9dc5;
+
+    /** Result of a query which copied the rest of its range */
+    static final long DONE = -1;
+    // Result of copying from a single segment which did not reach the end of the range
+    private static final long NEXT_SEGMENT = -2;
+
+    private static final class Segment {
+        final long first; // Index of the first record in the store
+        File file;
+        MappedByteBuffer buffer; // Records, null once the segment is packed
+        int count;
+        long firstTimestamp;
+        long lastTimestamp;
+
+        Segment(long first, File file, MappedByteBuffer buffer, int count) {
+            this.first = first;
+            this.file = file;
+            this.buffer = buffer;
+            this.count = count;
+        }
+    }
+
+    private final File mDirectory;
+    private final int mMaxSegments;
+    private final Executor mPacker;
+    // Sealed segments, oldest first, packed or waiting to be packed
+    private final List<Segment> mSealed = new ArrayList<>();
+    private final StoredReading mReading = new StoredReading();
+    private final ReadingCodec.Columns mColumns = new ReadingCodec.Columns(BLOCK_READINGS);
+    private Segment mTail;
+    private boolean mClosed;
+
+    private ReadingStore(File directory, int maxSegments, Executor packer) {
+        mDirectory = directory;
+        mMaxSegments = Math.max(1, maxSegments);
+        mPacker = packer;
+    }
+
+    /**
+     * Open store in directory, creating it if needed
+     * @param directory Directory holding the segment files
+     * @param maxSegments Maximum number of segments kept
+     * @param packer Executor sealed segments are packed on
+     * @return Store
+     */
+    static ReadingStore open(File directory, int maxSegments, Executor packer) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can not create " + directory);
+        }
+        ReadingStore store = new ReadingStore(directory, maxSegments, packer);
+        store.load();
+        return store;
+    }
+
+    /**
+     * Append reading
+     * @param frame Decoded frame
+     * @param timestamp Time the frame was received
+     */
+    synchronized void append(SensorFrame frame, long timestamp) throws IOException {
+        if (mClosed) throw new IOException("Store is closed");
+
+        if (mTail.count == SEGMENT_RECORDS) {
+            roll();
+        }
+
+        MappedByteBuffer buffer = mTail.buffer;
+        int offset = mTail.count * RECORD_SIZE;
+        buffer.putLong(offset, timestamp);
+        buffer.putInt(offset + 8, frame.getLastLoggedRecord());
+        for (int channel = 0; channel < SensorFrame.CHANNEL_COUNT; channel++) {
+            buffer.putShort(offset + 12 + channel * 2, frame.getChannel(channel));
+        }
+        buffer.putInt(offset + CHECKSUM_OFFSET, checksum(buffer, offset));
+        mTail.count++;
+    }
+
+    /**
+     * @return Number of stored readings
+     */
+    synchronized long size() {
+        long first = mSealed.isEmpty() ? mTail.first : mSealed.get(0).first;
+        return mTail.first + mTail.count - first;
+    }
+
+    /**
+     * Copy readings received in time range, oldest first
+     * @param from Start of range in ms since epoch, inclusive
+     * @param to End of range in ms since epoch, exclusive
+     * @param start Index of the reading to start at, 0 or the result for the previous page
+     * @param out Destination, cleared and filled up to its capacity
+     * @return Index of the reading the next page starts at, -1 if the range is complete
+     */
+    synchronized long query(long from, long to, long start, ReadingCodec.Columns out) throws IOException {
+        out.size = 0;
+        for (Segment segment : mSealed) {
+            long next = segment.buffer != null
+                    ? copyRecords(segment, from, to, start, out)
+                    : copyBlocks(segment, from, to, start, out);
+            if (next != NEXT_SEGMENT) return next;
+        }
+        long next = copyRecords(mTail, from, to, start, out);
+        return next != NEXT_SEGMENT ? next : DONE;
+    }
+
+    /**
+     * Write readings received in time range to a file of packed blocks
+     * @param from Start of range in ms since epoch, inclusive
+     * @param to End of range in ms since epoch, exclusive
+     * @param file Destination file
+     * @return Number of written readings
+     */
+    int export(long from, long to, File file) throws IOException {
+        ReadingCodec.Columns columns = new ReadingCodec.Columns(BLOCK_READINGS);
+        ByteBuffer buffer = ByteBuffer.allocate(ReadingCodec.maxEncodedSize(BLOCK_READINGS));
+        int count = 0;
+
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            FileChannel channel = stream.getChannel();
+            long next = 0;
+            do {
+                // Each page is a block, written while appending goes on
+                next = query(from, to, next, columns);
+                count += columns.size;
+                writeBlock(columns, buffer, channel);
+            } while (next != DONE);
+            return count;
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Write the current segment to disk
+     */
+    synchronized void flush() {
+        if (!mClosed) {
+            mTail.buffer.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (mClosed) return;
+        flush();
+        mClosed = true;
+    }
+
+    /**
+     * Find segment files, recover the tail of the current segment and
+     * restart packing interrupted by a crash
+     */
+    private synchronized void load() throws IOException {
+        File[] files = mDirectory.listFiles();
+        if (files == null) files = new File[0];
+
+        // Segment and packed file by index of their first record
+        TreeMap<Long, File[]> found = new TreeMap<>();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(TEMP_SUFFIX)) {
+                file.delete();
+                continue;
+            }
+            int kind;
+            String suffix;
+            if (name.endsWith(SEGMENT_SUFFIX)) {
+                kind = 0;
+                suffix = SEGMENT_SUFFIX;
+            } else if (name.endsWith(PACKED_SUFFIX)) {
+                kind = 1;
+                suffix = PACKED_SUFFIX;
+            } else {
+                continue;
+            }
+            long first;
+            try {
+                first = Long.parseLong(name.substring(0, name.length() - suffix.length()));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            File[] pair = found.get(first);
+            if (pair == null) {
+                pair = new File[2];
+                found.put(first, pair);
+            }
+            pair[kind] = file;
+        }
+
+        for (Map.Entry<Long, File[]> entry : found.entrySet()) {
+            long first = entry.getKey();
+            File segmentFile = entry.getValue()[0];
+            File packedFile = entry.getValue()[1];
+
+            if (packedFile != null) {
+                // Packing finished, only deleting the segment may be missing
+                if (segmentFile != null) segmentFile.delete();
+                Segment packed = loadPacked(first, packedFile);
+                if (packed != null) mSealed.add(packed);
+                continue;
+            }
+
+            MappedByteBuffer buffer = map(segmentFile);
+            Segment segment = new Segment(first, segmentFile, buffer, recover(buffer));
+            if (first == found.lastKey()) {
+                mTail = segment;
+            } else if (segment.count == 0) {
+                segmentFile.delete();
+            } else {
+                seal(segment);
+            }
+        }
+
+        if (mTail == null) {
+            long first = 0;
+            if (!mSealed.isEmpty()) {
+                Segment last = mSealed.get(mSealed.size() - 1);
+                first = last.first + last.count;
+            }
+            mTail = create(first);
+        }
+
+        trim();
+        for (Segment segment : mSealed) {
+            if (segment.buffer != null) packLater(segment);
+        }
+    }
+
+    /**
+     * Read block headers of packed file
+     * @return Packed segment or null if the file is empty or corrupt and was deleted
+     */
+    private static Segment loadPacked(long first, File file) throws IOException {
+        ByteBuffer data = mapPacked(file);
+        int count = 0;
+        long firstTimestamp = 0;
+        long lastTimestamp = 0;
+        try {
+            while (data.hasRemaining()) {
+                int blockCount = ReadingCodec.readHeader(data, data.position());
+                if (count == 0) firstTimestamp = ReadingCodec.firstTimestamp(data);
+                lastTimestamp = ReadingCodec.lastTimestamp(data);
+                count += blockCount;
+                data.position(data.position() + ReadingCodec.blockSize(data));
+            }
+        } catch (IOException e) {
+            count = 0;
+        }
+        if (count == 0) {
+            file.delete();
+            return null;
+        }
+        Segment segment = new Segment(first, file, null, count);
+        segment.firstTimestamp = firstTimestamp;
+        segment.lastTimestamp = lastTimestamp;
+        return segment;
+    }
+
+    /**
+     * Count complete records at the start of segment
+     * @param buffer Mapped segment
+     * @return Number of records with a valid checksum before the first invalid one
+     */
+    private static int recover(MappedByteBuffer buffer) {
+        int count = 0;
+        while (count < SEGMENT_RECORDS) {
+            int offset = count * RECORD_SIZE;
+            if (buffer.getInt(offset + CHECKSUM_OFFSET) != checksum(buffer, offset)) break;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Seal full segment, start the next one and pack the full one later
+     */
+    private void roll() throws IOException {
+        Segment full = mTail;
+        mTail = create(full.first + full.count);
+        seal(full);
+        trim();
+        packLater(full);
+    }
+
+    /**
+     * Add segment which is no longer appended to after the sealed ones
+     * @param segment Segment with at least one record
+     */
+    private void seal(Segment segment) {
+        segment.firstTimestamp = segment.buffer.getLong(0);
+        segment.lastTimestamp = segment.buffer.getLong((segment.count - 1) * RECORD_SIZE);
+        mSealed.add(segment);
+    }
+
+    /**
+     * Delete the oldest segments beyond the limit
+     */
+    private void trim() {
+        while (mSealed.size() + 1 > mMaxSegments) {
+            mSealed.remove(0).file.delete();
+        }
+    }
+
+    /**
+     * Pack sealed segment on the packer, it stays readable in place until
+     * the packed file is complete. If packing fails the segment is kept as
+     * it is and packed again when the store is opened next time.
+     * @param segment Sealed segment
+     */
+    private void packLater(final Segment segment) {
+        final MappedByteBuffer buffer = segment.buffer;
+        final int count = segment.count;
+        try {
+            mPacker.execute(new Runnable() {
+                @Override
+                public void run() {
+                    File packed;
+                    try {
+                        buffer.force();
+                        packed = pack(segment.first, buffer, count);
+                    } catch (IOException e) {
+                        return;
+                    }
+                    finishPacking(segment, packed);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Packer shut down
+        }
+    }
+
+    /**
+     * Switch sealed segment over to its packed file
+     * @param segment Sealed segment
+     * @param packed Packed file
+     */
+    private synchronized void finishPacking(Segment segment, File packed) {
+        if (!mSealed.contains(segment)) {
+            // Deleted by trim while it was packed
+            packed.delete();
+            return;
+        }
+        File file = segment.file;
+        segment.file = packed;
+        segment.buffer = null;
+        file.delete();
+    }
+
+    /**
+     * Encode records of a segment into a packed file, called on the packer
+     * @param first Index of the first record in the store
+     * @param buffer Mapped segment, not modified any more
+     * @param count Number of records
+     * @return Packed file, renamed into place
+     */
+    private File pack(long first, MappedByteBuffer buffer, int count) throws IOException {
+        // The store's own scratch objects belong to callers holding the lock
+        StoredReading reading = new StoredReading();
+        ReadingCodec.Columns columns = new ReadingCodec.Columns(BLOCK_READINGS);
+
+        String name = name(first) + PACKED_SUFFIX;
+        File temp = new File(mDirectory, name + TEMP_SUFFIX);
+        ByteBuffer block = ByteBuffer.allocate(ReadingCodec.maxEncodedSize(BLOCK_READINGS));
+        FileOutputStream stream = new FileOutputStream(temp);
+        try {
+            FileChannel channel = stream.getChannel();
+            for (int record = 0; record < count; record++) {
+                columns.add(reading.wrap(buffer, record * RECORD_SIZE));
+                if (columns.size == columns.capacity()) {
+                    writeBlock(columns, block, channel);
+                }
+            }
+            writeBlock(columns, block, channel);
+            channel.force(true);
+        } finally {
+            stream.close();
+        }
+
+        File file = new File(mDirectory, name);
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Can not rename " + temp);
+        }
+        return file;
+    }
+
+    /**
+     * Copy readings in range from records of a segment
+     * @return Index to continue at, DONE or NEXT_SEGMENT
+     */
+    private long copyRecords(Segment segment, long from, long to, long start, ReadingCodec.Columns out) {
+        if (segment.first + segment.count <= start) return NEXT_SEGMENT;
+        int record = Math.max(lowerBound(segment, from), (int) Math.max(0, start - segment.first));
+        for (; record < segment.count; record++) {
+            mReading.wrap(segment.buffer, record * RECORD_SIZE);
+            if (mReading.getTimestamp() >= to) return DONE;
+            if (out.size == out.capacity()) return segment.first + record;
+            out.add(mReading);
+        }
+        return NEXT_SEGMENT;
+    }
+
+    /**
+     * Copy readings in range from blocks of a packed segment
+     * @return Index to continue at, DONE or NEXT_SEGMENT
+     */
+    private long copyBlocks(Segment segment, long from, long to, long start, ReadingCodec.Columns out) throws IOException {
+        if (segment.first + segment.count <= start || segment.lastTimestamp < from) return NEXT_SEGMENT;
+        if (segment.firstTimestamp >= to) return DONE;
+
+        ByteBuffer data = mapPacked(segment.file);
+        long index = segment.first;
+        while (data.hasRemaining()) {
+            int count = ReadingCodec.readHeader(data, data.position());
+            if (index + count <= start || ReadingCodec.lastTimestamp(data) < from) {
+                data.position(data.position() + ReadingCodec.blockSize(data));
+                index += count;
+                continue;
+            }
+            if (ReadingCodec.firstTimestamp(data) >= to) return DONE;
+
+            ReadingCodec.decode(data, mColumns);
+            for (int i = 0; i < count; i++, index++) {
+                if (index < start) continue;
+                long timestamp = mColumns.timestamps[i];
+                if (timestamp < from) continue;
+                if (timestamp >= to) return DONE;
+                if (out.size == out.capacity()) return index;
+                out.add(mReading.wrap(mColumns, i));
+            }
+        }
+        return NEXT_SEGMENT;
+    }
+
+    /**
+     * Encode readings as block, write it and clear them
+     * @param columns Readings, nothing is written if empty
+     * @param buffer Scratch buffer for the encoded block
+     * @param channel Destination
+     */
+    private static void writeBlock(ReadingCodec.Columns columns, ByteBuffer buffer, FileChannel channel) throws IOException {
+        if (columns.size == 0) return;
+        buffer.clear();
+        ReadingCodec.encode(columns, buffer);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        columns.size = 0;
+    }
+
+    private Segment create(long first) throws IOException {
+        File file = new File(mDirectory, name(first) + SEGMENT_SUFFIX);
+        return new Segment(first, file, map(file), 0);
+    }
+
+    private static String name(long first) {
+        return String.format("%019d", first);
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer;
+        } finally {
+            // The mapping does not need the file to stay open
+            raf.close();
+        }
+    }
+
+    private static ByteBuffer mapPacked(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Find the first record in segment at or after time
+     * @param segment Segment
+     * @param from Time in ms since epoch
+     * @return Record index in segment
+     */
+    private static int lowerBound(Segment segment, long from) {
+        int low = 0;
+        int high = segment.count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (segment.buffer.getLong(mid * RECORD_SIZE) < from) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Checksum of the record fields, never 0 for a record of zeros
+     * @param buffer Mapped segment
+     * @param offset Offset of record
+     */
+    private static int checksum(MappedByteBuffer buffer, int offset) {
+        int hash = CHECKSUM_SEED;
+        for (int i = 0; i < CHECKSUM_OFFSET; i += 4) {
+            hash = (hash ^ buffer.getInt(offset + i)) * 0x01000193;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,205 @@
+package com.rusel.RCTBluetoothSerial;
+
+/**
+ * Downloads a range of records from the sensor log.
+ *
+ * The sensor protocol available to us only describes the frames the
+ * sensor sends. How a record is requested is assumed: a request is a
+ * {@link SensorCommand} with the configured command code and the record
+ * number as argument, and the sensor answers with a frame carrying the
+ * same command code and the record number in its lastLoggedRecord field.
+ *
+ * Instead of waiting for each response before asking for the next record,
+ * up to a window of requests is kept in flight. A frame is a response when
+ * it carries the command code and the number of a record in flight. A
+ * frame with the number of a record this sync already received or gave up
+ * on is taken as a late duplicate while requests were sent within the
+ * timeout, any other frame is left to the live stream. Requests without
+ * response are sent again after a timeout and given up after the
+ * configured number of retries.
+ *
+ * Responses arrive on the reader thread and timeouts are checked from a
+ * timer, so all entry points are synchronized.
+ */
+class RecordSync {
+
+    /**
+     * Receives requests to send and downloaded records, called with the
+     * monitor of the sync held
+     */
+    interface Listener {
+        /**
+         * Send request for record
+         * @param command Command code
+         * @param record Record number
+         */
+        void onRequest(int command, int record);
+
+        /**
+         * Handle downloaded record
+         * @param frame Response frame, only valid during the call
+         * @param timestamp Time the response was received
+         */
+        void onRecord(SensorFrame frame, long timestamp);
+
+        /**
+         * Handle end of download
+         * @param received Number of downloaded records
+         * @param failed Number of records given up on
+         */
+        void onComplete(int received, int failed);
+    }
+
+    private final int mCommand;
+    private final int mFirst;
+    private final int mLast;
+    private final long mTimeout;
+    private final int mRetries;
+    private final Listener mListener;
+
+    // Requests in flight, one slot per window position
+    private final int[] mSlotRecords;
+    private final long[] mSlotSentAt;
+    private final int[] mSlotAttempts;
+    private final boolean[] mSlotUsed;
+
+    private int mNext;
+    private long mLastSentAt;
+    private int mReceived;
+    private int mFailed;
+    private boolean mDone;
+
+    /**
+     * Constructor
+     * @param command Command code used to request a record
+     * @param first First record to download
+     * @param last Last record to download
+     * @param window Maximum number of requests in flight
+     * @param timeout Time in ms to wait for a response before sending again
+     * @param retries Number of times a request is sent again
+     * @param listener Listener
+     */
+    RecordSync(int command, int first, int last, int window, long timeout, int retries, Listener listener) {
+        mCommand = command;
+        mFirst = first;
+        mNext = first;
+        mLast = last;
+        mTimeout = timeout;
+        mRetries = retries;
+        mListener = listener;
+
+        int slots = Math.max(1, window);
+        mSlotRecords = new int[slots];
+        mSlotSentAt = new long[slots];
+        mSlotAttempts = new int[slots];
+        mSlotUsed = new boolean[slots];
+    }
+
+    /**
+     * Send the first window of requests
+     * @param now Current time in ms
+     */
+    synchronized void start(long now) {
+        fill(now);
+        completeIfDone();
+    }
+
+    /**
+     * Offer frame received from the sensor
+     * @param frame Decoded frame
+     * @param timestamp Time the frame was received
+     * @param now Current time in ms
+     * @return Whether the frame was a response for this sync
+     */
+    synchronized boolean onFrame(SensorFrame frame, long timestamp, long now) {
+        if (mDone || frame.getCommandCode() != (mCommand & 0xff)) return false;
+
+        int record = frame.getLastLoggedRecord();
+        for (int slot = 0; slot < mSlotUsed.length; slot++) {
+            if (mSlotUsed[slot] && mSlotRecords[slot] == record) {
+                mSlotUsed[slot] = false;
+                mReceived++;
+                mListener.onRecord(frame, timestamp);
+                fill(now);
+                completeIfDone();
+                return true;
+            }
+        }
+        // Late duplicate of a record requested before
+        return record >= mFirst && record < mNext && now - mLastSentAt <= mTimeout;
+    }
+
+    /**
+     * Send requests which timed out again or give up on them
+     * @param now Current time in ms
+     */
+    synchronized void checkTimeouts(long now) {
+        if (mDone) return;
+        for (int slot = 0; slot < mSlotUsed.length; slot++) {
+            if (!mSlotUsed[slot] || now - mSlotSentAt[slot] < mTimeout) continue;
+            if (mSlotAttempts[slot] <= mRetries) {
+                send(slot, now);
+            } else {
+                mSlotUsed[slot] = false;
+                mFailed++;
+            }
+        }
+        fill(now);
+        completeIfDone();
+    }
+
+    /**
+     * Stop download, the listener is notified of completion
+     */
+    synchronized void cancel() {
+        if (mDone) return;
+        for (int slot = 0; slot < mSlotUsed.length; slot++) {
+            if (mSlotUsed[slot]) {
+                mSlotUsed[slot] = false;
+                mFailed++;
+            }
+        }
+        mFailed += Math.max(0, mLast - mNext + 1);
+        mNext = mLast + 1;
+        completeIfDone();
+    }
+
+    synchronized boolean isDone() {
+        return mDone;
+    }
+
+    /**
+     * Use free slots to request the next records
+     * @param now Current time in ms
+     */
+    private void fill(long now) {
+        for (int slot = 0; slot < mSlotUsed.length && mNext <= mLast; slot++) {
+            if (mSlotUsed[slot]) continue;
+            mSlotUsed[slot] = true;
+            mSlotRecords[slot] = mNext++;
+            mSlotAttempts[slot] = 0;
+            send(slot, now);
+        }
+    }
+
+    private void send(int slot, long now) {
+        mSlotSentAt[slot] = now;
+        mLastSentAt = now;
+        mSlotAttempts[slot]++;
+        mListener.onRequest(mCommand, mSlotRecords[slot]);
+    }
+
+    private int countInFlight() {
+        int count = 0;
+        for (boolean used : mSlotUsed) {
+            if (used) count++;
+        }
+        return count;
+    }
+
+    private void completeIfDone() {
+        if (mDone || mNext <= mLast || countInFlight() > 0) return;
+        mDone = true;
+        mListener.onComplete(mReceived, mFailed);
+    }
+}
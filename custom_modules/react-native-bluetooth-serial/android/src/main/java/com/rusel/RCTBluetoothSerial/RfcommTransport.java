@@ -0,0 +1,45 @@
+package com.rusel.RCTBluetoothSerial;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothSocket;
+
+/**
+ * Transport over a connected Bluetooth RFCOMM socket
+ */
+class RfcommTransport implements SerialTransport {
+    private final BluetoothSocket mSocket;
+    private final BluetoothDevice mDevice;
+
+    /**
+     * Constructor
+     * @param socket Connected socket
+     * @param device Device the socket is connected to
+     */
+    RfcommTransport(BluetoothSocket socket, BluetoothDevice device) {
+        mSocket = socket;
+        mDevice = device;
+    }
+
+    BluetoothDevice getDevice() {
+        return mDevice;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return mSocket.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return mSocket.getOutputStream();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mSocket.close();
+    }
+}
@@ -0,0 +1,47 @@
+package com.rusel.RCTBluetoothSerial;
+
+/**
+ * Encodes commands sent to the sensor.
+ *
+ * The format of commands is not documented, only the frames the sensor
+ * sends are. It is assumed that a command mirrors the start of a sensor
+ * frame: the 0xDE 0xAF signature, the command code and a little endian 32
+ * bit argument, such as the number of a logged record. Everything sending
+ * commands goes through this class, so it is the one place to change if
+ * the sensor expects another format.
+ */
+final class SensorCommand {
+    static final int LENGTH = 7;
+
+    private SensorCommand() {
+    }
+
+    /**
+     * Encode command into a new array
+     * @param command Command code
+     * @param argument Command argument
+     * @return Encoded command
+     */
+    static byte[] encode(int command, int argument) {
+        byte[] out = new byte[LENGTH];
+        encode(command, argument, out, 0);
+        return out;
+    }
+
+    /**
+     * Encode command into an existing array
+     * @param command Command code
+     * @param argument Command argument
+     * @param out Destination array
+     * @param offset Offset in destination
+     */
+    static void encode(int command, int argument, byte[] out, int offset) {
+        out[offset] = SensorFrameDecoder.SIGNATURE_FIRST;
+        out[offset + 1] = SensorFrameDecoder.SIGNATURE_SECOND;
+        out[offset + 2] = (byte) command;
+        out[offset + 3] = (byte) argument;
+        out[offset + 4] = (byte) (argument >> 8);
+        out[offset + 5] = (byte) (argument >> 16);
+        out[offset + 6] = (byte) (argument >> 24);
+    }
+}
@@ -0,0 +1,188 @@
+package com.rusel.RCTBluetoothSerial;
+
+/**
+ * Reusable view over a sensor frame stored in a byte array.
+ *
+ * All multi-byte fields are little endian and read with absolute offsets,
+ * so decoding a frame allocates nothing. An instance is not thread safe,
+ * every thread decoding frames has to use its own.
+ *
+ * Frame layout:
+ * <pre>
+ *  0  signature         2 bytes
+ *  2  commandCode       1 byte, unsigned
+ *  3  status            1 byte, unsigned
+ *  4  battery           1 byte, unsigned
+ *  5  lastLoggedRecord  4 bytes
+ *  9  temperature       2 bytes
+ * 11  humidity          2 bytes
+ * 13  co2               2 bytes
+ * 15  pm1               2 bytes
+ * 17  pm25              2 bytes
+ * 19  pm10              2 bytes
+ * 21  tvoc              2 bytes
+ * </pre>
+ */
+final class SensorFrame {
+    static final int LENGTH = SensorFrameDecoder.FRAME_LENGTH;
+
+    // Measurement channels, in the order they are stored and reported
+    static final int CHANNEL_TEMPERATURE = 0;
+    static final int CHANNEL_HUMIDITY = 1;
+    static final int CHANNEL_CO2 = 2;
+    static final int CHANNEL_PM1 = 3;
+    static final int CHANNEL_PM25 = 4;
+    static final int CHANNEL_PM10 = 5;
+    static final int CHANNEL_TVOC = 6;
+    static final int CHANNEL_BATTERY = 7;
+    static final int CHANNEL_COUNT = 8;
+    static final String[] CHANNEL_NAMES = {
+            "temperature", "humidity", "co2", "pm1", "pm25", "pm10", "tvoc", "battery"
+    };
+
+    private static final int OFFSET_SIGNATURE = 0;
+    private static final int OFFSET_COMMAND_CODE = 2;
+    private static final int OFFSET_STATUS = 3;
+    private static final int OFFSET_BATTERY = 4;
+    private static final int OFFSET_LAST_LOGGED_RECORD = 5;
+    private static final int OFFSET_TEMPERATURE = 9;
+    private static final int OFFSET_HUMIDITY = 11;
+    private static final int OFFSET_CO2 = 13;
+    private static final int OFFSET_PM1 = 15;
+    private static final int OFFSET_PM25 = 17;
+    private static final int OFFSET_PM10 = 19;
+    private static final int OFFSET_TVOC = 21;
+
+    // Range of the temperature and humidity sensors, in tenths of a degree and percent
+    private static final int MIN_TEMPERATURE = -400;
+    private static final int MAX_TEMPERATURE = 1250;
+    private static final int MAX_HUMIDITY = 1000;
+
+    private byte[] mData;
+    private int mOffset;
+
+    /**
+     * Point this view at a frame
+     * @param data Array holding the frame
+     * @param offset Offset of the frame in array
+     * @return This view
+     */
+    SensorFrame wrap(byte[] data, int offset) {
+        mData = data;
+        mOffset = offset;
+        return this;
+    }
+
+    /**
+     * Check whether the frame holds a reading, an empty buffer or a frame
+     * without sensor values does not.
+     * @return Frame holds a reading
+     */
+    boolean hasData() {
+        return mData != null
+                && mData.length >= mOffset + LENGTH
+                && mData[mOffset] != 0
+                && (mData[mOffset + 21] != 0 || mData[mOffset + 22] != 0);
+    }
+
+    /**
+     * Check whether the bytes can be a frame: the signature is in place
+     * and every reading is within the range of its sensor. Bytes assembled
+     * across a lost part of the stream usually fail, the signature of the
+     * following frame then ends up in a high byte and makes a reading
+     * negative or out of range.
+     * @return Frame is plausible
+     */
+    boolean isValid() {
+        if (mData == null || mData.length < mOffset + LENGTH
+                || mData[mOffset] != SensorFrameDecoder.SIGNATURE_FIRST
+                || mData[mOffset + 1] != SensorFrameDecoder.SIGNATURE_SECOND) {
+            return false;
+        }
+        short temperature = getTemperature();
+        short humidity = getHumidity();
+        return temperature >= MIN_TEMPERATURE && temperature <= MAX_TEMPERATURE
+                && humidity >= 0 && humidity <= MAX_HUMIDITY
+                && getCo2() >= 0 && getPm1() >= 0 && getPm25() >= 0 && getPm10() >= 0 && getTvoc() >= 0;
+    }
+
+    short getSignature() {
+        return getShort(OFFSET_SIGNATURE);
+    }
+
+    short getCommandCode() {
+        return getUnsignedByte(OFFSET_COMMAND_CODE);
+    }
+
+    short getStatus() {
+        return getUnsignedByte(OFFSET_STATUS);
+    }
+
+    short getBattery() {
+        return getUnsignedByte(OFFSET_BATTERY);
+    }
+
+    int getLastLoggedRecord() {
+        int i = mOffset + OFFSET_LAST_LOGGED_RECORD;
+        return (mData[i] & 0xff)
+                | (mData[i + 1] & 0xff) << 8
+                | (mData[i + 2] & 0xff) << 16
+                | (mData[i + 3] & 0xff) << 24;
+    }
+
+    short getTemperature() {
+        return getShort(OFFSET_TEMPERATURE);
+    }
+
+    short getHumidity() {
+        return getShort(OFFSET_HUMIDITY);
+    }
+
+    short getCo2() {
+        return getShort(OFFSET_CO2);
+    }
+
+    short getPm1() {
+        return getShort(OFFSET_PM1);
+    }
+
+    short getPm25() {
+        return getShort(OFFSET_PM25);
+    }
+
+    short getPm10() {
+        return getShort(OFFSET_PM10);
+    }
+
+    short getTvoc() {
+        return getShort(OFFSET_TVOC);
+    }
+
+    /**
+     * Read measurement channel by index
+     * @param channel One of the CHANNEL_* constants
+     * @return Channel value
+     */
+    short getChannel(int channel) {
+        switch (channel) {
+            case CHANNEL_TEMPERATURE: return getTemperature();
+            case CHANNEL_HUMIDITY: return getHumidity();
+            case CHANNEL_CO2: return getCo2();
+            case CHANNEL_PM1: return getPm1();
+            case CHANNEL_PM25: return getPm25();
+            case CHANNEL_PM10: return getPm10();
+            case CHANNEL_TVOC: return getTvoc();
+            case CHANNEL_BATTERY: return getBattery();
+            default: throw new IllegalArgumentException("Unknown channel " + channel);
+        }
+    }
+
+    private short getUnsignedByte(int field) {
+        return (short) (mData[mOffset + field] & 0xff);
+    }
+
+    private short getShort(int field) {
+        int i = mOffset + field;
+        return (short) ((mData[i] & 0xff) | mData[i + 1] << 8);
+    }
+}
@@ -0,0 +1,147 @@
+package com.rusel.RCTBluetoothSerial;
+
+/**
+ * Streaming decoder which turns arbitrary chunks read from the serial
+ * stream into complete sensor frames.
+ *
+ * Every frame is {@link #FRAME_LENGTH} bytes long and starts with the
+ * 0xDE 0xAF signature. Chunks may split or coalesce frames in any way,
+ * each frame is handed to the listener as soon as its last byte arrives.
+ * Bytes which do not belong to a frame are skipped until the next
+ * signature, and a frame rejected by the listener is rescanned from its
+ * second byte so that a frame starting inside of it is not lost.
+ *
+ * This class has no Android dependencies and is not thread safe, it is
+ * meant to be driven by a single reader thread.
+ */
+final class SensorFrameDecoder {
+    static final int FRAME_LENGTH = 23;
+    static final byte SIGNATURE_FIRST = (byte) 0xDE;
+    static final byte SIGNATURE_SECOND = (byte) 0xAF;
+
+    /**
+     * Receives decoded frames
+     */
+    interface Listener {
+        /**
+         * Handle complete frame. The array is reused for the next frame,
+         * copy it if it has to outlive this call.
+         * @param frame Array holding the frame at offset 0
+         * @return False if the frame is corrupt and the decoder has to resync
+         */
+        boolean onFrame(byte[] frame);
+    }
+
+    private final Listener mListener;
+    private final byte[] mFrame = new byte[FRAME_LENGTH];
+    private int mLength;
+
+    private long mFrames;
+    private long mRejected;
+    private long mSkipped;
+
+    /**
+     * Constructor
+     * @param listener Listener which receives decoded frames
+     */
+    SensorFrameDecoder(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Feed next chunk of data read from the stream
+     * @param data Buffer holding the chunk
+     * @param offset Offset of the chunk in buffer
+     * @param length Length of the chunk
+     */
+    void feed(byte[] data, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+
+        while (i < end) {
+            if (mLength == 0) {
+                // Hunt for first signature byte
+                int start = i;
+                while (i < end && data[i] != SIGNATURE_FIRST) {
+                    i++;
+                }
+                mSkipped += i - start;
+                if (i == end) {
+                    break;
+                }
+                mFrame[mLength++] = data[i++];
+            } else if (mLength == 1) {
+                byte b = data[i++];
+                if (b == SIGNATURE_SECOND) {
+                    mFrame[mLength++] = b;
+                } else if (b != SIGNATURE_FIRST) {
+                    mSkipped += 2;
+                    mLength = 0;
+                } else {
+                    mSkipped++;
+                }
+            } else {
+                int count = Math.min(FRAME_LENGTH - mLength, end - i);
+                System.arraycopy(data, i, mFrame, mLength, count);
+                mLength += count;
+                i += count;
+
+                if (mLength == FRAME_LENGTH) {
+                    mLength = 0;
+                    if (mListener.onFrame(mFrame)) {
+                        mFrames++;
+                    } else {
+                        mRejected++;
+                        resync();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop partially received frame, used when the stream is restarted
+     */
+    void reset() {
+        mLength = 0;
+    }
+
+    /**
+     * @return Number of frames accepted by the listener
+     */
+    long getFrameCount() {
+        return mFrames;
+    }
+
+    /**
+     * @return Number of frames rejected by the listener
+     */
+    long getRejectedCount() {
+        return mRejected;
+    }
+
+    /**
+     * @return Number of bytes skipped while hunting for a signature
+     */
+    long getSkippedCount() {
+        return mSkipped;
+    }
+
+    /**
+     * Look for the next signature inside of a rejected frame and keep
+     * everything from there on as the start of the next frame.
+     */
+    private void resync() {
+        int start = 1;
+        while (start < FRAME_LENGTH) {
+            if (mFrame[start] == SIGNATURE_FIRST
+                    && (start == FRAME_LENGTH - 1 || mFrame[start + 1] == SIGNATURE_SECOND)) {
+                break;
+            }
+            start++;
+        }
+        mSkipped += start;
+        mLength = FRAME_LENGTH - start;
+        System.arraycopy(mFrame, start, mFrame, 0, mLength);
+    }
+}
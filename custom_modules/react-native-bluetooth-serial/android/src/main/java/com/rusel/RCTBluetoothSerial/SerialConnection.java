@@ -0,0 +1,173 @@
+package com.rusel.RCTBluetoothSerial;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Established connection to a device over a {@link SerialTransport}.
+ *
+ * A reader thread passes the raw bytes and the decoded sensor frames to
+ * the listener, writes are queued to a {@link SerialWriter}. Nothing here
+ * depends on Android, so the path from transport bytes to decoded frames
+ * runs on a plain JVM.
+ */
+class SerialConnection {
+    private static final int READ_BUFFER_SIZE = 1024;
+
+    /**
+     * Receives data and the end of the connection, called on the reader thread
+     */
+    interface Listener {
+        /**
+         * Handle bytes as read from the transport
+         * @param connection Connection
+         * @param data Buffer holding the bytes, only valid during the call
+         * @param length Number of bytes
+         */
+        void onBytes(SerialConnection connection, byte[] data, int length);
+
+        /**
+         * Handle decoded frame
+         * @param connection Connection
+         * @param frame Little endian buffer of the frame, reused for the next one
+         */
+        void onFrame(SerialConnection connection, ByteBuffer frame);
+
+        /**
+         * Handle end of connection, also called after close
+         * @param connection Connection
+         * @param e Reason
+         */
+        void onDisconnected(SerialConnection connection, Exception e);
+    }
+
+    private final String mAddress;
+    private final SerialTransport mTransport;
+    private final Listener mListener;
+    private final PipelineStats mStats;
+    private final TraceRecorder mTrace;
+    private final InputStream mInStream;
+    private final SerialWriter mWriter;
+    private final Thread mReader;
+
+    /**
+     * Constructor
+     * @param address Address of device
+     * @param transport Open transport, closed with the connection
+     * @param listener Listener
+     * @param stats Statistics the reader records into
+     * @param trace Trace the reader records into
+     */
+    SerialConnection(String address, SerialTransport transport, Listener listener, PipelineStats stats, TraceRecorder trace) throws IOException {
+        mAddress = address;
+        mTransport = transport;
+        mListener = listener;
+        mStats = stats;
+        mTrace = trace;
+        mInStream = transport.getInputStream();
+        mWriter = new SerialWriter(transport.getOutputStream());
+        mReader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                read();
+            }
+        }, "SerialReader");
+    }
+
+    String getAddress() {
+        return mAddress;
+    }
+
+    SerialTransport getTransport() {
+        return mTransport;
+    }
+
+    /**
+     * Start reading and writing
+     */
+    void start() {
+        mWriter.start();
+        mReader.start();
+    }
+
+    /**
+     * Queue write
+     * @param data Bytes to write, must not be modified afterwards
+     * @param callback Callback, may be null
+     * @return False if the write queue is full or the connection closed
+     */
+    boolean write(byte[] data, SerialWriter.Callback callback) {
+        return mWriter.enqueue(data, callback);
+    }
+
+    /**
+     * Close connection, queued writes are failed
+     */
+    void close() throws IOException {
+        mWriter.close();
+        mTransport.close();
+    }
+
+    private void read() {
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        // Time spent in the listener during the current feed, it is not part of decoding
+        final long[] listenerNanos = new long[1];
+
+        // Frames are passed on as soon as they are complete, whatever the read boundaries are
+        final SensorFrameDecoder decoder = new SensorFrameDecoder(new SensorFrameDecoder.Listener() {
+            private final SensorFrame view = new SensorFrame();
+            private ByteBuffer byteBuffer;
+
+            @Override
+            public boolean onFrame(byte[] frame) {
+                // Implausible bytes are handed back, the decoder looks for the next frame inside of them
+                if (!view.wrap(frame, 0).isValid()) {
+                    return false;
+                }
+                // The decoder reuses its frame array, so it only has to be wrapped once
+                if (byteBuffer == null || byteBuffer.array() != frame) {
+                    byteBuffer = ByteBuffer.wrap(frame);
+                    byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
+                }
+                long start = System.nanoTime();
+                mListener.onFrame(SerialConnection.this, byteBuffer);
+                listenerNanos[0] += System.nanoTime() - start;
+                return true;
+            }
+        });
+
+        // Keep listening to the InputStream while connected
+        while (true) {
+            try {
+                int bytes = mInStream.read(buffer);
+                if (bytes < 0) {
+                    throw new IOException("End of stream");
+                }
+                mTrace.record(TraceRecorder.Event.READ, mAddress, bytes, 0);
+                mListener.onBytes(this, buffer, bytes);
+
+                long frames = decoder.getFrameCount();
+                long rejected = decoder.getRejectedCount();
+                long skipped = decoder.getSkippedCount();
+                listenerNanos[0] = 0;
+                long start = System.nanoTime();
+                decoder.feed(buffer, 0, bytes);
+                mStats.decode.record((System.nanoTime() - start - listenerNanos[0]) / 1000);
+
+                mStats.bytesRead.addAndGet(bytes);
+                if (decoder.getFrameCount() != frames) mStats.framesDecoded.addAndGet(decoder.getFrameCount() - frames);
+                if (decoder.getRejectedCount() != rejected) mStats.framesRejected.addAndGet(decoder.getRejectedCount() - rejected);
+                if (decoder.getSkippedCount() != skipped) {
+                    mStats.bytesSkipped.addAndGet(decoder.getSkippedCount() - skipped);
+                    mTrace.record(TraceRecorder.Event.SKIPPED, mAddress, decoder.getSkippedCount() - skipped, 0);
+                }
+            } catch (Exception e) {
+                mWriter.close();
+                mListener.onDisconnected(this, e);
+                break;
+            }
+        }
+    }
+}
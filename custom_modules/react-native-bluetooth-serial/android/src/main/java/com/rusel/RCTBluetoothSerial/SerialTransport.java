@@ -0,0 +1,25 @@
+package com.rusel.RCTBluetoothSerial;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Open byte stream connection to a device.
+ *
+ * {@link SerialConnection} reads, decodes and writes through this
+ * interface only, so the same code runs over an RFCOMM socket on the
+ * phone or over plain streams on a JVM.
+ */
+interface SerialTransport extends Closeable {
+    InputStream getInputStream() throws IOException;
+
+    OutputStream getOutputStream() throws IOException;
+
+    /**
+     * Close the connection, a blocked read fails
+     */
+    @Override
+    void close() throws IOException;
+}
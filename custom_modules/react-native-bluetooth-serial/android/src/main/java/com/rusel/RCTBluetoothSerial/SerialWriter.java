@@ -0,0 +1,187 @@
+package com.rusel.RCTBluetoothSerial;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Thread which writes queued messages to an output stream, so that slow
+ * links never block the caller.
+ *
+ * Messages waiting in the queue are coalesced into a single stream write
+ * of up to {@link #MAX_CHUNK} bytes. The callback of every message is
+ * completed only after its bytes were written and flushed. The queue is
+ * bounded, when it is full new messages are rejected right away instead
+ * of piling up. After the stream failed the writer stops, messages still
+ * queued are failed once with {@link ClosedException}.
+ */
+class SerialWriter extends Thread {
+    static final int MAX_QUEUED_BYTES = 64 * 1024;
+    static final int MAX_CHUNK = 1024;
+
+    /**
+     * Notified when a message was written or could not be written,
+     * called on the writer thread
+     */
+    interface Callback {
+        void onWritten();
+        void onFailed(Exception e);
+    }
+
+    /**
+     * Reason a message is failed without being written because the writer
+     * was closed, or stopped after the stream failed
+     */
+    static final class ClosedException extends IOException {
+        ClosedException() {
+            super("Connection closed");
+        }
+    }
+
+    private static final class Message {
+        final byte[] data;
+        final Callback callback;
+
+        Message(byte[] data, Callback callback) {
+            this.data = data;
+            this.callback = callback;
+        }
+    }
+
+    private final OutputStream mStream;
+    private final ArrayDeque<Message> mQueue = new ArrayDeque<>();
+    private final byte[] mChunk = new byte[MAX_CHUNK];
+    private final List<Message> mInFlight = new ArrayList<>();
+    private int mQueuedBytes;
+    private boolean mClosed;
+
+    /**
+     * Constructor
+     * @param stream Stream to write to
+     */
+    SerialWriter(OutputStream stream) {
+        super("SerialWriter");
+        mStream = stream;
+        setDaemon(true);
+    }
+
+    /**
+     * Queue message for writing
+     * @param data Bytes to write, must not be modified afterwards
+     * @param callback Callback, may be null
+     * @return False if the queue is full or the writer was closed, callback is not called then
+     */
+    synchronized boolean enqueue(byte[] data, Callback callback) {
+        if (data.length == 0 && !mClosed) {
+            if (callback != null) callback.onWritten();
+            return true;
+        }
+        if (mClosed || (mQueuedBytes > 0 && mQueuedBytes + data.length > MAX_QUEUED_BYTES)) {
+            return false;
+        }
+        mQueue.addLast(new Message(data, callback));
+        mQueuedBytes += data.length;
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Stop writing, messages still in queue are failed with ClosedException
+     * by the writer thread as it ends
+     */
+    void close() {
+        synchronized (this) {
+            mClosed = true;
+            notifyAll();
+        }
+        interrupt();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            int length;
+            try {
+                length = takeChunk();
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (length < 0) break;
+
+            try {
+                if (length > 0) {
+                    mStream.write(mChunk, 0, length);
+                } else {
+                    // Single message too large to coalesce, write it directly
+                    mStream.write(mInFlight.get(0).data);
+                }
+                mStream.flush();
+            } catch (Exception e) {
+                // The stream is dead, later messages would only fail one by one
+                synchronized (this) {
+                    mClosed = true;
+                }
+                fail(mInFlight, e);
+                mInFlight.clear();
+                break;
+            }
+
+            for (Message message : mInFlight) {
+                if (message.callback != null) message.callback.onWritten();
+            }
+            mInFlight.clear();
+        }
+        fail(takeQueue(), new ClosedException());
+    }
+
+    /**
+     * Remove all messages from the queue, enqueue rejects new ones once closed
+     * @return Messages which were queued
+     */
+    private synchronized List<Message> takeQueue() {
+        List<Message> messages = new ArrayList<>(mQueue);
+        mQueue.clear();
+        mQueuedBytes = 0;
+        return messages;
+    }
+
+    /**
+     * Wait for queued messages and move as many as fit into the chunk buffer
+     * to the in flight list.
+     * @return Number of bytes in the chunk buffer, 0 if the only message in
+     * flight is larger than the chunk buffer, -1 when closed
+     */
+    private synchronized int takeChunk() throws InterruptedException {
+        while (mQueue.isEmpty() && !mClosed) {
+            wait();
+        }
+        if (mClosed) return -1;
+
+        int length = 0;
+        Message message;
+        while ((message = mQueue.peekFirst()) != null) {
+            int size = message.data.length;
+            if (length + size > MAX_CHUNK && !(length == 0 && size > MAX_CHUNK)) break;
+            mQueue.removeFirst();
+            mQueuedBytes -= size;
+            mInFlight.add(message);
+            if (size > MAX_CHUNK) return 0;
+            System.arraycopy(message.data, 0, mChunk, length, size);
+            length += size;
+        }
+        return length;
+    }
+
+    /**
+     * Fail callbacks of messages
+     * @param messages Messages
+     * @param e Reason
+     */
+    private static void fail(List<Message> messages, Exception e) {
+        for (Message message : messages) {
+            if (message.callback != null) message.callback.onFailed(e);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.rusel.RCTBluetoothSerial;
+
+import java.nio.ByteBuffer;
+
+/**
+ * View of a reading of {@link ReadingStore}.
+ *
+ * Like {@link SensorFrame} it only points at the reading, either a record
+ * in a mapped segment or a row of decoded columns, and getters read the
+ * fields in place.
+ */
+final class StoredReading {
+    private ByteBuffer mBuffer;
+    private int mOffset;
+    private ReadingCodec.Columns mColumns;
+    private int mIndex;
+
+    /**
+     * Point view at record
+     * @param buffer Little endian buffer holding the record
+     * @param offset Offset of record
+     * @return This view
+     */
+    StoredReading wrap(ByteBuffer buffer, int offset) {
+        mBuffer = buffer;
+        mOffset = offset;
+        mColumns = null;
+        return this;
+    }
+
+    /**
+     * Point view at decoded reading
+     * @param columns Decoded readings
+     * @param index Index of reading
+     * @return This view
+     */
+    StoredReading wrap(ReadingCodec.Columns columns, int index) {
+        mColumns = columns;
+        mIndex = index;
+        mBuffer = null;
+        return this;
+    }
+
+    long getTimestamp() {
+        if (mColumns != null) return mColumns.timestamps[mIndex];
+        return mBuffer.getLong(mOffset);
+    }
+
+    int getLastLoggedRecord() {
+        if (mColumns != null) return mColumns.lastLoggedRecords[mIndex];
+        return mBuffer.getInt(mOffset + 8);
+    }
+
+    /**
+     * @param channel One of the SensorFrame.CHANNEL_ constants
+     * @return Channel value
+     */
+    short getChannel(int channel) {
+        if (mColumns != null) return mColumns.channels[channel][mIndex];
+        return mBuffer.getShort(mOffset + 12 + channel * 2);
+    }
+}
@@ -0,0 +1,104 @@
+package com.rusel.RCTBluetoothSerial;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Transport over plain streams, such as a TCP socket or piped streams.
+ *
+ * Lets the connection code run without Bluetooth, for example against a
+ * sensor simulator or in tests and benchmarks on a JVM.
+ */
+final class StreamTransport implements SerialTransport {
+    private final InputStream mInStream;
+    private final OutputStream mOutStream;
+    private final Socket mSocket;
+
+    private StreamTransport(InputStream in, OutputStream out, Socket socket) {
+        mInStream = in;
+        mOutStream = out;
+        mSocket = socket;
+    }
+
+    /**
+     * Create transport over streams, both are closed with the transport
+     * @param in Stream to read from
+     * @param out Stream to write to
+     * @return Transport
+     */
+    static StreamTransport of(InputStream in, OutputStream out) {
+        return new StreamTransport(in, out, null);
+    }
+
+    /**
+     * Create transport over a connected socket
+     * @param socket Socket
+     * @return Transport
+     */
+    static StreamTransport of(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        return new StreamTransport(socket.getInputStream(), socket.getOutputStream(), socket);
+    }
+
+    /**
+     * Connect to a TCP server
+     * @param host Host name
+     * @param port Port
+     * @param timeout Connect timeout in ms, 0 to wait until the system gives up
+     * @return Transport
+     */
+    static StreamTransport connect(String host, int port, int timeout) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), timeout);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return of(socket);
+    }
+
+    /**
+     * Create two transports connected to each other over TCP loopback,
+     * what is written to one is read from the other
+     * @return Both ends
+     */
+    static StreamTransport[] loopback() throws IOException {
+        ServerSocket server = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        try {
+            Socket client = new Socket(server.getInetAddress(), server.getLocalPort());
+            Socket accepted = server.accept();
+            return new StreamTransport[] {of(client), of(accepted)};
+        } finally {
+            server.close();
+        }
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return mInStream;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return mOutStream;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mSocket != null) {
+            mSocket.close();
+            return;
+        }
+        try {
+            mInStream.close();
+        } finally {
+            mOutStream.close();
+        }
+    }
+}
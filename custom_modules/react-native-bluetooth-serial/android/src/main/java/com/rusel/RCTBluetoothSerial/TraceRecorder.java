@@ -0,0 +1,242 @@
+package com.rusel.RCTBluetoothSerial;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * In memory trace of what happened on the connections, kept in a fixed
+ * size ring of binary records.
+ *
+ * Recording an event stores its type, the time, the thread, an interned
+ * subject like the device address and two numbers, nothing is formatted.
+ * Events above the current level return after a single volatile read,
+ * verbose events, like one per frame, can be sampled. Text is only made
+ * when the ring is dumped, which writers may overwrite concurrently, a
+ * record changed while it was read is left out of the dump.
+ */
+final class TraceRecorder {
+
+    enum Level {
+        OFF, ERROR, WARN, INFO, DEBUG, VERBOSE
+    }
+
+    /**
+     * Recorded events with their level and the meaning of their two numbers
+     */
+    enum Event {
+        CONNECT(Level.INFO, "strategy", null),
+        CONNECTED(Level.INFO, "strategy", "micros"),
+        CONNECT_FAILED(Level.WARN, "strategy", "micros"),
+        CONNECT_TIMEOUT(Level.WARN, "strategy", "timeout"),
+        CONNECTION_LOST(Level.WARN, null, null),
+        RECONNECTING(Level.INFO, "attempt", "delay"),
+        RECONNECTED(Level.INFO, "attempt", null),
+        STOP(Level.INFO, null, null),
+        READ(Level.VERBOSE, "bytes", null),
+        SKIPPED(Level.DEBUG, "bytes", null),
+        FRAME(Level.VERBOSE, "command", "lastLoggedRecord"),
+        WRITE(Level.DEBUG, "bytes", null),
+        WRITE_FAILED(Level.WARN, "bytes", null),
+        EVENT(Level.VERBOSE, null, null),
+        EVENT_DROPPED(Level.DEBUG, null, null),
+        ERROR(Level.ERROR, null, null);
+
+        final Level level;
+        final String a;
+        final String b;
+
+        Event(Level level, String a, String b) {
+            this.level = level;
+            this.a = a;
+            this.b = b;
+        }
+    }
+
+    /**
+     * Receives records of a dump, oldest first
+     */
+    interface Visitor {
+        /**
+         * Handle record
+         * @param time Time in ms since epoch
+         * @param thread Id of the recording thread
+         * @param event Event
+         * @param subject Subject, may be null
+         * @param a First number, meaning depends on event
+         * @param b Second number, meaning depends on event
+         */
+        void onRecord(long time, long thread, Event event, String subject, long a, long b);
+    }
+
+    // Longs per record: stamp, time, event and subject and thread, a, b
+    private static final int RECORD_LONGS = 5;
+    private static final int MAX_SUBJECTS = 1024;
+    private static final Event[] EVENTS = Event.values();
+
+    private final int mMask;
+    private final AtomicLongArray mRing;
+    private final AtomicLong mNext = new AtomicLong();
+    private final AtomicInteger mSampled = new AtomicInteger();
+    private volatile int mLevel = Level.INFO.ordinal();
+    private volatile int mSampling = 1;
+
+    // Subjects are stored by index, index 0 stands for none
+    private final ConcurrentHashMap<String, Integer> mSubjectIds = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<String> mSubjects = new AtomicReferenceArray<>(MAX_SUBJECTS);
+    private int mSubjectCount = 1;
+
+    // Record times are nanoTime, converted to wall time when dumped
+    private final long mWallBase = System.currentTimeMillis();
+    private final long mNanoBase = System.nanoTime();
+
+    /**
+     * Constructor
+     * @param capacity Number of records kept, rounded up to a power of two
+     */
+    TraceRecorder(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        mMask = size - 1;
+        mRing = new AtomicLongArray(size * RECORD_LONGS);
+    }
+
+    /**
+     * Set level of recorded events
+     * @param level Highest level recorded
+     */
+    void setLevel(Level level) {
+        mLevel = level.ordinal();
+    }
+
+    Level getLevel() {
+        return Level.values()[mLevel];
+    }
+
+    /**
+     * Record only every n-th verbose event
+     * @param sampling n, 1 to record all of them
+     */
+    void setSampling(int sampling) {
+        mSampling = Math.max(1, sampling);
+    }
+
+    /**
+     * Record event without numbers
+     * @param event Event
+     * @param subject Subject like the device address, may be null
+     */
+    void record(Event event, String subject) {
+        record(event, subject, 0, 0);
+    }
+
+    /**
+     * Record event
+     * @param event Event
+     * @param subject Subject like the device address, may be null
+     * @param a First number
+     * @param b Second number
+     */
+    void record(Event event, String subject, long a, long b) {
+        if (event.level.ordinal() > mLevel) return;
+        int sampling = mSampling;
+        if (event.level == Level.VERBOSE && sampling > 1 && mSampled.incrementAndGet() % sampling != 0) return;
+
+        long sequence = mNext.getAndIncrement();
+        int base = (int) (sequence & mMask) * RECORD_LONGS;
+        long meta = ((long) event.ordinal() << 48) | ((long) subjectId(subject) << 32) | (Thread.currentThread().getId() & 0xffffffffL);
+
+        // Invalidate the slot while it is written, the stamp is set last
+        mRing.set(base, -1);
+        mRing.lazySet(base + 1, System.nanoTime());
+        mRing.lazySet(base + 2, meta);
+        mRing.lazySet(base + 3, a);
+        mRing.lazySet(base + 4, b);
+        mRing.set(base, sequence + 1);
+    }
+
+    /**
+     * Pass records in the ring to visitor, oldest first
+     * @param visitor Visitor
+     * @return Number of records passed
+     */
+    int dump(Visitor visitor) {
+        long end = mNext.get();
+        long start = Math.max(0, end - mMask - 1);
+        int count = 0;
+        for (long sequence = start; sequence < end; sequence++) {
+            int base = (int) (sequence & mMask) * RECORD_LONGS;
+            if (mRing.get(base) != sequence + 1) continue;
+            long nanos = mRing.get(base + 1);
+            long meta = mRing.get(base + 2);
+            long a = mRing.get(base + 3);
+            long b = mRing.get(base + 4);
+            if (mRing.get(base) != sequence + 1) continue;
+
+            int event = (int) (meta >>> 48);
+            if (event >= EVENTS.length) continue;
+            int subject = (int) (meta >>> 32) & 0xffff;
+            long time = mWallBase + (nanos - mNanoBase) / 1000000;
+            visitor.onRecord(time, meta & 0xffffffffL, EVENTS[event], subject != 0 ? mSubjects.get(subject) : null, a, b);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Write records in the ring as text, one per line, oldest first
+     * @param writer Writer
+     * @return Number of records written
+     */
+    int dump(final Writer writer) throws IOException {
+        final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
+        final StringBuilder line = new StringBuilder();
+        final IOException[] error = new IOException[1];
+        int count = dump(new Visitor() {
+            @Override
+            public void onRecord(long time, long thread, Event event, String subject, long a, long b) {
+                if (error[0] != null) return;
+                line.setLength(0);
+                line.append(format.format(new Date(time))).append(' ').append(thread).append(' ')
+                        .append(event.level).append(' ').append(event);
+                if (subject != null) line.append(' ').append(subject);
+                if (event.a != null) line.append(' ').append(event.a).append('=').append(a);
+                if (event.b != null) line.append(' ').append(event.b).append('=').append(b);
+                line.append('\n');
+                try {
+                    writer.write(line.toString());
+                } catch (IOException e) {
+                    error[0] = e;
+                }
+            }
+        });
+        if (error[0] != null) throw error[0];
+        return count;
+    }
+
+    /**
+     * Get index of subject, interning it on first use
+     * @param subject Subject, may be null
+     * @return Index, 0 for none or when there are too many subjects
+     */
+    private int subjectId(String subject) {
+        if (subject == null) return 0;
+        Integer id = mSubjectIds.get(subject);
+        if (id != null) return id;
+        synchronized (mSubjectIds) {
+            id = mSubjectIds.get(subject);
+            if (id != null) return id;
+            if (mSubjectCount >= MAX_SUBJECTS) return 0;
+            id = mSubjectCount++;
+            mSubjects.set(id, subject);
+            mSubjectIds.put(subject, id);
+            return id;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.rusel.RCTBluetoothSerial;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ReadingCodecTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static ReadingCodec.Columns readings(int count, long seed) {
+        Random random = new Random(seed);
+        ReadingCodec.Columns columns = new ReadingCodec.Columns(count);
+        long timestamp = 1500000000000L;
+        for (int i = 0; i < count; i++) {
+            // Mostly steady rate with jitter and an occasional gap
+            timestamp += 1000 + random.nextInt(20) - 10 + (random.nextInt(100) == 0 ? 60000 : 0);
+            columns.timestamps[i] = timestamp;
+            columns.lastLoggedRecords[i] = 5000 + i;
+            for (int channel = 0; channel < SensorFrame.CHANNEL_COUNT; channel++) {
+                short previous = i == 0 ? (short) (100 * channel) : columns.channels[channel][i - 1];
+                columns.channels[channel][i] = (short) (previous + random.nextInt(5) - 2);
+            }
+        }
+        columns.size = count;
+        return columns;
+    }
+
+    private static void assertSame(ReadingCodec.Columns expected, ReadingCodec.Columns actual) {
+        assertEquals(expected.size, actual.size);
+        for (int i = 0; i < expected.size; i++) {
+            assertEquals(expected.timestamps[i], actual.timestamps[i]);
+            assertEquals(expected.lastLoggedRecords[i], actual.lastLoggedRecords[i]);
+            for (int channel = 0; channel < SensorFrame.CHANNEL_COUNT; channel++) {
+                assertEquals(expected.channels[channel][i], actual.channels[channel][i]);
+            }
+        }
+    }
+
+    @Test
+    public void roundTripsBlock() throws IOException {
+        ReadingCodec.Columns columns = readings(1000, 1);
+        ByteBuffer buffer = ByteBuffer.allocate(ReadingCodec.maxEncodedSize(1000));
+        ReadingCodec.encode(columns, buffer);
+        int size = buffer.position();
+        buffer.flip();
+
+        ReadingCodec.Columns decoded = new ReadingCodec.Columns(1000);
+        ReadingCodec.decode(buffer, decoded);
+        assertEquals(size, buffer.position());
+        assertSame(columns, decoded);
+        // Slowly changing readings take a few bytes each instead of a 32 byte record
+        assertTrue("size " + size, size < 1000 * 12);
+    }
+
+    @Test
+    public void roundTripsExtremeValues() throws IOException {
+        ReadingCodec.Columns columns = new ReadingCodec.Columns(3);
+        long[] timestamps = {0, Long.MAX_VALUE / 2, 1};
+        int[] records = {Integer.MIN_VALUE, Integer.MAX_VALUE, 0};
+        short[] values = {Short.MIN_VALUE, Short.MAX_VALUE, -1};
+        for (int i = 0; i < 3; i++) {
+            columns.timestamps[i] = timestamps[i];
+            columns.lastLoggedRecords[i] = records[i];
+            for (int channel = 0; channel < SensorFrame.CHANNEL_COUNT; channel++) {
+                columns.channels[channel][i] = values[i];
+            }
+        }
+        columns.size = 3;
+
+        ByteBuffer buffer = ByteBuffer.allocate(ReadingCodec.maxEncodedSize(3));
+        ReadingCodec.encode(columns, buffer);
+        buffer.flip();
+        ReadingCodec.Columns decoded = new ReadingCodec.Columns(3);
+        ReadingCodec.decode(buffer, decoded);
+        assertSame(columns, decoded);
+    }
+
+    @Test
+    public void rejectsTruncatedBlock() {
+        ReadingCodec.Columns columns = readings(100, 2);
+        ByteBuffer buffer = ByteBuffer.allocate(ReadingCodec.maxEncodedSize(100));
+        ReadingCodec.encode(columns, buffer);
+        buffer.flip();
+        buffer.limit(buffer.limit() - 5);
+        try {
+            ReadingCodec.decode(buffer, new ReadingCodec.Columns(100));
+            fail("Truncated block decoded");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void decodesExportedBlocks() throws IOException {
+        ReadingStore store = ReadingStore.open(mFolder.newFolder(), 8, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        SensorFrame frame = new SensorFrame();
+        int total = 2500;
+        for (int record = 0; record < total; record++) {
+            store.append(frame.wrap(TestFrames.frame(record), 0), record * 1000L);
+        }
+        File export = mFolder.newFile();
+        assertEquals(total - 100, store.export(100 * 1000L, total * 1000L, export));
+        store.close();
+
+        // Every block is decoded on its own from the header it starts with
+        RandomAccessFile file = new RandomAccessFile(export, "r");
+        byte[] bytes = new byte[(int) file.length()];
+        try {
+            file.readFully(bytes);
+        } finally {
+            file.close();
+        }
+        ByteBuffer data = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        ReadingCodec.Columns block = new ReadingCodec.Columns(ReadingStore.BLOCK_READINGS);
+        int record = 100;
+        int blocks = 0;
+        while (data.hasRemaining()) {
+            ReadingCodec.readHeader(data, data.position());
+            long first = ReadingCodec.firstTimestamp(data);
+            long last = ReadingCodec.lastTimestamp(data);
+            ReadingCodec.decode(data, block);
+            assertEquals(block.timestamps[0], first);
+            assertEquals(block.timestamps[block.size - 1], last);
+            for (int i = 0; i < block.size; i++, record++) {
+                frame.wrap(TestFrames.frame(record), 0);
+                assertEquals(record * 1000L, block.timestamps[i]);
+                assertEquals(record, block.lastLoggedRecords[i]);
+                short[] expected = new short[SensorFrame.CHANNEL_COUNT];
+                short[] actual = new short[SensorFrame.CHANNEL_COUNT];
+                for (int channel = 0; channel < SensorFrame.CHANNEL_COUNT; channel++) {
+                    expected[channel] = frame.getChannel(channel);
+                    actual[channel] = block.channels[channel][i];
+                }
+                assertArrayEquals(expected, actual);
+            }
+            blocks++;
+        }
+        assertEquals(total, record);
+        assertEquals(3, blocks);
+    }
+}
@@ -0,0 +1,49 @@
+package com.rusel.RCTBluetoothSerial;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ReadingHistoryTest {
+
+    private final SensorFrame mFrame = new SensorFrame();
+
+    private void add(ReadingHistory history, int record, long timestamp) {
+        history.add(mFrame.wrap(TestFrames.frame(record), 0), timestamp);
+    }
+
+    @Test
+    public void countsReadingsSinceTime() {
+        ReadingHistory history = new ReadingHistory(8);
+        for (int record = 0; record < 12; record++) {
+            add(history, record, 1000 + record * 100);
+        }
+
+        // Only the newest 8, received at 1400..2100, are kept
+        assertEquals(8, history.countSince(0));
+        assertEquals(3, history.countSince(1900));
+        assertEquals(3, history.countSince(1850));
+        assertEquals(0, history.countSince(2200));
+    }
+
+    @Test
+    public void countsReadingsAfterClockWasSetBack() {
+        ReadingHistory history = new ReadingHistory(4);
+        add(history, 0, 1000);
+        add(history, 1, 1100);
+        add(history, 2, 500);
+        add(history, 3, 600);
+
+        // The readings of 1000 and 1100 are older than the ones after the clock was set back
+        assertEquals(4, history.countSince(1000));
+        assertEquals(3, history.countSince(1100));
+        assertEquals(4, history.countSince(550));
+
+        // Once the readings before the jump are overwritten timestamps grow again
+        add(history, 4, 700);
+        add(history, 5, 800);
+        assertEquals(4, history.countSince(0));
+        assertEquals(2, history.countSince(700));
+        assertEquals(500, history.getTimestamp(3));
+    }
+}
@@ -0,0 +1,186 @@
+package com.rusel.RCTBluetoothSerial;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ReadingStoreTest {
+    private static final Executor INLINE = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    /**
+     * Executor which runs tasks only when asked to
+     */
+    private static final class HeldExecutor implements Executor {
+        final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            for (Runnable task : tasks) {
+                task.run();
+            }
+            tasks.clear();
+        }
+    }
+
+    private static void append(ReadingStore store, int first, int count) throws IOException {
+        SensorFrame frame = new SensorFrame();
+        for (int record = first; record < first + count; record++) {
+            store.append(frame.wrap(TestFrames.frame(record), 0), record * 1000L);
+        }
+    }
+
+    /**
+     * Read range page by page and check that it holds consecutive records
+     * @return Number of readings
+     */
+    private static int checkRange(ReadingStore store, long from, long to, int firstRecord, int pageSize) throws IOException {
+        ReadingCodec.Columns page = new ReadingCodec.Columns(pageSize);
+        SensorFrame expected = new SensorFrame();
+        int count = 0;
+        long next = 0;
+        do {
+            next = store.query(from, to, next, page);
+            for (int i = 0; i < page.size; i++, count++) {
+                int record = firstRecord + count;
+                expected.wrap(TestFrames.frame(record), 0);
+                assertEquals(record * 1000L, page.timestamps[i]);
+                assertEquals(record, page.lastLoggedRecords[i]);
+                for (int channel = 0; channel < SensorFrame.CHANNEL_COUNT; channel++) {
+                    assertEquals(expected.getChannel(channel), page.channels[channel][i]);
+                }
+            }
+        } while (next != ReadingStore.DONE);
+        return count;
+    }
+
+    private int countFiles(File directory, String suffix) {
+        int count = 0;
+        for (String name : directory.list()) {
+            if (name.endsWith(suffix)) count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void roundTripAcrossRollover() throws IOException {
+        File directory = mFolder.newFolder();
+        ReadingStore store = ReadingStore.open(directory, 8, INLINE);
+        int total = ReadingStore.SEGMENT_RECORDS + 500;
+        append(store, 0, total);
+
+        assertEquals(total, store.size());
+        assertEquals(1, countFiles(directory, ".blk"));
+        assertEquals(1, countFiles(directory, ".seg"));
+        assertEquals(total, checkRange(store, 0, Long.MAX_VALUE, 0, 1000));
+        store.close();
+    }
+
+    @Test
+    public void rangeQuerySpansPackedAndCurrentSegment() throws IOException {
+        ReadingStore store = ReadingStore.open(mFolder.newFolder(), 8, INLINE);
+        append(store, 0, ReadingStore.SEGMENT_RECORDS + 500);
+
+        int from = ReadingStore.SEGMENT_RECORDS - 300;
+        int to = ReadingStore.SEGMENT_RECORDS + 200;
+        assertEquals(to - from, checkRange(store, from * 1000L, to * 1000L, from, 64));
+        assertEquals(0, checkRange(store, -5000, 0, 0, 64));
+        store.close();
+    }
+
+    @Test
+    public void sealedSegmentIsReadableUntilPacked() throws IOException {
+        File directory = mFolder.newFolder();
+        HeldExecutor packer = new HeldExecutor();
+        ReadingStore store = ReadingStore.open(directory, 8, packer);
+        int total = ReadingStore.SEGMENT_RECORDS + 10;
+        append(store, 0, total);
+
+        assertEquals(1, packer.tasks.size());
+        assertEquals(2, countFiles(directory, ".seg"));
+        assertEquals(total, checkRange(store, 0, Long.MAX_VALUE, 0, 4096));
+
+        packer.runAll();
+        assertEquals(1, countFiles(directory, ".seg"));
+        assertEquals(1, countFiles(directory, ".blk"));
+        assertEquals(total, checkRange(store, 0, Long.MAX_VALUE, 0, 4096));
+        store.close();
+    }
+
+    @Test
+    public void recoversTailUpToTruncatedRecord() throws IOException {
+        File directory = mFolder.newFolder();
+        ReadingStore store = ReadingStore.open(directory, 8, INLINE);
+        append(store, 0, 10);
+        store.close();
+
+        // Damage record 7 as if the crash happened while it was written
+        File segment = directory.listFiles()[0];
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        try {
+            file.seek(7 * ReadingStore.RECORD_SIZE + 14);
+            file.writeShort(0x1234);
+        } finally {
+            file.close();
+        }
+
+        store = ReadingStore.open(directory, 8, INLINE);
+        assertEquals(7, store.size());
+        append(store, 7, 5);
+        assertEquals(12, checkRange(store, 0, Long.MAX_VALUE, 0, 100));
+        store.close();
+    }
+
+    @Test
+    public void reopenPacksSealedSegmentsAndEnforcesLimit() throws IOException {
+        File directory = mFolder.newFolder();
+        HeldExecutor packer = new HeldExecutor();
+        ReadingStore store = ReadingStore.open(directory, 8, packer);
+        append(store, 0, 3 * ReadingStore.SEGMENT_RECORDS + 10);
+        store.close();
+        // Packing never ran, as if the process died
+        assertEquals(4, countFiles(directory, ".seg"));
+
+        store = ReadingStore.open(directory, 2, INLINE);
+        assertEquals(ReadingStore.SEGMENT_RECORDS + 10, store.size());
+        assertEquals(1, countFiles(directory, ".seg"));
+        assertEquals(1, countFiles(directory, ".blk"));
+        int first = 2 * ReadingStore.SEGMENT_RECORDS;
+        assertEquals(ReadingStore.SEGMENT_RECORDS + 10, checkRange(store, 0, Long.MAX_VALUE, first, 1000));
+        store.close();
+    }
+
+    @Test
+    public void closedStoreRejectsAppend() throws IOException {
+        ReadingStore store = ReadingStore.open(mFolder.newFolder(), 8, INLINE);
+        store.close();
+        try {
+            append(store, 0, 1);
+            fail("Append after close");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("closed"));
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.rusel.RCTBluetoothSerial;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class SensorFrameDecoderTest {
+
+    /**
+     * Listener which checks frames like the reader does and collects their record numbers
+     */
+    private static final class Collector implements SensorFrameDecoder.Listener {
+        final SensorFrame view = new SensorFrame();
+        final List<Integer> records = new ArrayList<>();
+
+        @Override
+        public boolean onFrame(byte[] frame) {
+            if (!view.wrap(frame, 0).isValid()) {
+                return false;
+            }
+            records.add(view.getLastLoggedRecord());
+            return true;
+        }
+    }
+
+    private static Collector decode(InputStream in) throws IOException {
+        Collector collector = new Collector();
+        SensorFrameDecoder decoder = new SensorFrameDecoder(collector);
+        byte[] buffer = new byte[1024];
+        int bytes;
+        while ((bytes = in.read(buffer)) >= 0) {
+            decoder.feed(buffer, 0, bytes);
+        }
+        return collector;
+    }
+
+    private static List<Integer> records(int... records) {
+        List<Integer> list = new ArrayList<>();
+        for (int record : records) {
+            list.add(record);
+        }
+        return list;
+    }
+
+    @Test
+    public void decodesFramesWhateverTheReadBoundaries() throws IOException {
+        byte[] stream = TestFrames.concat(TestFrames.frame(1), TestFrames.frame(2), TestFrames.frame(3), TestFrames.frame(4));
+        for (int chunk = 1; chunk <= stream.length; chunk++) {
+            Collector collector = decode(new TestFrames.ChunkedInputStream(stream, chunk));
+            assertEquals("chunk " + chunk, records(1, 2, 3, 4), collector.records);
+        }
+    }
+
+    @Test
+    public void emitsFrameAsSoonAsItsLastByteArrives() {
+        Collector collector = new Collector();
+        SensorFrameDecoder decoder = new SensorFrameDecoder(collector);
+        byte[] frame = TestFrames.frame(7);
+
+        decoder.feed(frame, 0, frame.length - 1);
+        assertEquals(0, collector.records.size());
+        decoder.feed(frame, frame.length - 1, 1);
+        assertEquals(records(7), collector.records);
+    }
+
+    @Test
+    public void skipsNoiseBetweenFrames() throws IOException {
+        byte[] noise = {0x01, SensorFrameDecoder.SIGNATURE_FIRST, 0x02, SensorFrameDecoder.SIGNATURE_FIRST};
+        byte[] stream = TestFrames.concat(noise, TestFrames.frame(1), noise, TestFrames.frame(2), noise);
+        SensorFrameDecoder decoder = new SensorFrameDecoder(new Collector());
+
+        Collector collector = decode(new TestFrames.ChunkedInputStream(stream, 5));
+        assertEquals(records(1, 2), collector.records);
+
+        decoder.feed(stream, 0, stream.length);
+        // The last signature byte may start a frame, it is kept rather than skipped
+        assertEquals(3 * noise.length - 1, decoder.getSkippedCount());
+        assertEquals(2, decoder.getFrameCount());
+    }
+
+    @Test
+    public void resyncsInsideTruncatedFrame() throws IOException {
+        byte[] truncated = new byte[10];
+        System.arraycopy(TestFrames.frame(100), 0, truncated, 0, truncated.length);
+        byte[] stream = TestFrames.concat(truncated, TestFrames.frame(200), TestFrames.frame(300), TestFrames.frame(400));
+
+        for (int chunk = 1; chunk <= stream.length; chunk++) {
+            Collector collector = new Collector();
+            SensorFrameDecoder decoder = new SensorFrameDecoder(collector);
+            InputStream in = new TestFrames.ChunkedInputStream(stream, chunk);
+            byte[] buffer = new byte[1024];
+            int bytes;
+            while ((bytes = in.read(buffer)) >= 0) {
+                decoder.feed(buffer, 0, bytes);
+            }
+            assertEquals("chunk " + chunk, records(200, 300, 400), collector.records);
+            assertEquals(1, decoder.getRejectedCount());
+            assertEquals(truncated.length, decoder.getSkippedCount());
+        }
+    }
+
+    @Test
+    public void resyncsAfterFrameWithLostBytes() throws IOException {
+        byte[] damaged = TestFrames.frame(100);
+        byte[] head = new byte[15];
+        System.arraycopy(damaged, 0, head, 0, head.length);
+        byte[] stream = TestFrames.concat(TestFrames.frame(50), head, TestFrames.frame(200), TestFrames.frame(300));
+
+        Collector collector = decode(new TestFrames.ChunkedInputStream(stream, 7));
+        assertEquals(records(50, 200, 300), collector.records);
+    }
+
+    @Test
+    public void rejectsImplausibleFrame() {
+        SensorFrame view = new SensorFrame();
+        assertEquals(true, view.wrap(TestFrames.frame(1), 0).isValid());
+        assertEquals(false, view.wrap(TestFrames.frame(1, 1, (short) -900, (short) 500), 0).isValid());
+        assertEquals(false, view.wrap(TestFrames.frame(1, 1, (short) 200, (short) -1), 0).isValid());
+    }
+}
@@ -0,0 +1,273 @@
+package com.rusel.RCTBluetoothSerial;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class SerialConnectionTest {
+    private static final long TIMEOUT = 5000;
+
+    private final PipelineStats mStats = new PipelineStats();
+    private final TraceRecorder mTrace = new TraceRecorder(64);
+    private final List<StreamTransport> mTransports = new ArrayList<>();
+
+    /**
+     * Listener collecting record numbers of frames and the end of the connection
+     */
+    private static final class Collector implements SerialConnection.Listener {
+        final List<Integer> records = new ArrayList<>();
+        final CountDownLatch disconnected = new CountDownLatch(1);
+        final CountDownLatch frames;
+        volatile Exception reason;
+
+        Collector(int expectedFrames) {
+            frames = new CountDownLatch(expectedFrames);
+        }
+
+        @Override
+        public void onBytes(SerialConnection connection, byte[] data, int length) {
+        }
+
+        @Override
+        public void onFrame(SerialConnection connection, ByteBuffer frame) {
+            synchronized (records) {
+                records.add(frame.getInt(5));
+            }
+            frames.countDown();
+        }
+
+        @Override
+        public void onDisconnected(SerialConnection connection, Exception e) {
+            reason = e;
+            disconnected.countDown();
+        }
+
+        List<Integer> getRecords() {
+            synchronized (records) {
+                return new ArrayList<>(records);
+            }
+        }
+    }
+
+    @After
+    public void closeTransports() throws IOException {
+        for (StreamTransport transport : mTransports) {
+            transport.close();
+        }
+    }
+
+    private StreamTransport[] loopback() throws IOException {
+        StreamTransport[] ends = StreamTransport.loopback();
+        mTransports.addAll(Arrays.asList(ends));
+        return ends;
+    }
+
+    @Test
+    public void decodesFramesWrittenByPeer() throws Exception {
+        StreamTransport[] ends = loopback();
+        Collector collector = new Collector(50);
+        SerialConnection connection = new SerialConnection("peer", ends[0], collector, mStats, mTrace);
+        connection.start();
+
+        // Send frames in bursts which split and coalesce them
+        byte[] stream = new byte[0];
+        for (int record = 0; record < 50; record++) {
+            stream = TestFrames.concat(stream, TestFrames.frame(record));
+        }
+        OutputStream peer = ends[1].getOutputStream();
+        for (int offset = 0; offset < stream.length; offset += 17) {
+            peer.write(stream, offset, Math.min(17, stream.length - offset));
+            peer.flush();
+        }
+
+        assertTrue(collector.frames.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        List<Integer> expected = new ArrayList<>();
+        for (int record = 0; record < 50; record++) {
+            expected.add(record);
+        }
+        assertEquals(expected, collector.getRecords());
+
+        // Stats of a read are added after its frames were passed on, they are final once the reader ended
+        connection.close();
+        assertTrue(collector.disconnected.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(stream.length, mStats.bytesRead.get());
+        assertEquals(50, mStats.framesDecoded.get());
+    }
+
+    @Test
+    public void writesReachPeer() throws Exception {
+        StreamTransport[] ends = loopback();
+        SerialConnection connection = new SerialConnection("peer", ends[0], new Collector(0), mStats, mTrace);
+        connection.start();
+
+        final CountDownLatch written = new CountDownLatch(3);
+        SerialWriter.Callback callback = new SerialWriter.Callback() {
+            @Override
+            public void onWritten() {
+                written.countDown();
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+            }
+        };
+        byte[] command = SensorCommand.encode(0x10, 42);
+        assertTrue(connection.write(command, callback));
+        assertTrue(connection.write(command, callback));
+        assertTrue(connection.write(new byte[] {1, 2, 3}, callback));
+        assertTrue(written.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+        byte[] expected = TestFrames.concat(command, command, new byte[] {1, 2, 3});
+        byte[] received = new byte[expected.length];
+        InputStream in = ends[1].getInputStream();
+        int length = 0;
+        while (length < received.length) {
+            int bytes = in.read(received, length, received.length - length);
+            if (bytes < 0) break;
+            length += bytes;
+        }
+        assertArrayEquals(expected, received);
+        connection.close();
+    }
+
+    @Test
+    public void closeEndsConnection() throws Exception {
+        StreamTransport[] ends = loopback();
+        Collector collector = new Collector(0);
+        SerialConnection connection = new SerialConnection("peer", ends[0], collector, mStats, mTrace);
+        connection.start();
+
+        connection.close();
+        assertTrue(collector.disconnected.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertNotNull(collector.reason);
+        assertEquals(false, connection.write(new byte[] {1}, null));
+    }
+
+    @Test
+    public void closeFailsQueuedWritesOnWriterThread() throws Exception {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        OutputStream blocking = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+        };
+        SerialWriter writer = new SerialWriter(blocking);
+        writer.start();
+
+        final CountDownLatch failed = new CountDownLatch(1);
+        final String[] failedOn = new String[1];
+        SerialWriter.Callback queued = new SerialWriter.Callback() {
+            @Override
+            public void onWritten() {
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                failedOn[0] = Thread.currentThread().getName();
+                failed.countDown();
+            }
+        };
+        assertTrue(writer.enqueue(new byte[] {1}, null));
+        assertTrue(writing.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertTrue(writer.enqueue(new byte[] {2}, queued));
+
+        writer.close();
+        release.countDown();
+        assertTrue(failed.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals("SerialWriter", failedOn[0]);
+    }
+
+    @Test
+    public void streamFailureStopsWriter() throws Exception {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        OutputStream failing = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IOException("Broken pipe");
+            }
+        };
+        SerialWriter writer = new SerialWriter(failing);
+        writer.start();
+
+        final List<Exception> failures = new ArrayList<>();
+        final CountDownLatch failed = new CountDownLatch(3);
+        SerialWriter.Callback callback = new SerialWriter.Callback() {
+            @Override
+            public void onWritten() {
+            }
+
+            @Override
+            public void onFailed(Exception e) {
+                synchronized (failures) {
+                    failures.add(e);
+                }
+                failed.countDown();
+            }
+        };
+        assertTrue(writer.enqueue(new byte[] {1}, callback));
+        assertTrue(writing.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertTrue(writer.enqueue(new byte[] {2}, callback));
+        assertTrue(writer.enqueue(new byte[] {3}, callback));
+        release.countDown();
+
+        assertTrue(failed.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals("Broken pipe", failures.get(0).getMessage());
+        assertTrue(failures.get(1) instanceof SerialWriter.ClosedException);
+        assertTrue(failures.get(2) instanceof SerialWriter.ClosedException);
+        writer.join(TIMEOUT);
+        assertEquals(false, writer.enqueue(new byte[] {4}, callback));
+    }
+
+    @Test
+    public void endOfStreamEndsConnection() throws Exception {
+        byte[] stream = TestFrames.concat(new byte[] {7, 7}, TestFrames.frame(1), TestFrames.frame(2));
+        Collector collector = new Collector(2);
+        SerialTransport transport = StreamTransport.of(new TestFrames.ChunkedInputStream(stream, 5), new ByteArrayOutputStream());
+        SerialConnection connection = new SerialConnection("stream", transport, collector, mStats, mTrace);
+        connection.start();
+
+        assertTrue(collector.disconnected.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(Arrays.asList(1, 2), collector.getRecords());
+        assertEquals(2, mStats.bytesSkipped.get());
+        connection.close();
+    }
+}
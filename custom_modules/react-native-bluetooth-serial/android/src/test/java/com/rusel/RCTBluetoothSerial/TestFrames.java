@@ -0,0 +1,90 @@
+package com.rusel.RCTBluetoothSerial;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Sensor frames and streams for tests
+ */
+final class TestFrames {
+    private TestFrames() {
+    }
+
+    /**
+     * Create frame with plausible readings derived from its record number
+     * @param record Last logged record
+     * @return Frame bytes
+     */
+    static byte[] frame(int record) {
+        return frame(1, record, (short) (200 + record % 50), (short) (400 + record % 100));
+    }
+
+    /**
+     * Create frame
+     * @param command Command code
+     * @param record Last logged record
+     * @param temperature Temperature
+     * @param co2 CO2
+     * @return Frame bytes
+     */
+    static byte[] frame(int command, int record, short temperature, short co2) {
+        ByteBuffer buffer = ByteBuffer.allocate(SensorFrame.LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(SensorFrameDecoder.SIGNATURE_FIRST);
+        buffer.put(SensorFrameDecoder.SIGNATURE_SECOND);
+        buffer.put((byte) command);
+        buffer.put((byte) 0);                // status
+        buffer.put((byte) 80);               // battery
+        buffer.putInt(record);
+        buffer.putShort(temperature);
+        buffer.putShort((short) 450);        // humidity
+        buffer.putShort(co2);
+        buffer.putShort((short) 5);          // pm1
+        buffer.putShort((short) 8);          // pm25
+        buffer.putShort((short) 12);         // pm10
+        buffer.putShort((short) 120);        // tvoc
+        return buffer.array();
+    }
+
+    /**
+     * Concatenate byte arrays
+     * @param parts Parts
+     * @return Bytes of all parts in order
+     */
+    static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (byte[] part : parts) {
+            buffer.put(part);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Stream which returns at most chunk bytes per read, like a socket
+     * delivering data in bursts
+     */
+    static final class ChunkedInputStream extends InputStream {
+        private final ByteArrayInputStream mIn;
+        private final int mChunk;
+
+        ChunkedInputStream(byte[] data, int chunk) {
+            mIn = new ByteArrayInputStream(data);
+            mChunk = chunk;
+        }
+
+        @Override
+        public int read() {
+            return mIn.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            return mIn.read(b, off, Math.min(len, mChunk));
+        }
+    }
+}
@@ -34,4 +34,17 @@ BluetoothSerial.write = (data) => {
   return BluetoothSerial.writeToDevice(data.toString('base64'))
 }
 
+/**
+ * Write data to device by id, you can pass string or buffer
+ * @param  {String} id
+ * @param  {Buffer|String} data
+ * @return {Promise<Boolean>}
+ */
+BluetoothSerial.writeTo = (id, data) => {
+  if (typeof data === 'string') {
+    data = new Buffer(data)
+  }
+  return BluetoothSerial.writeToDeviceId(id, data.toString('base64'))
+}
+
 module.exports = BluetoothSerial